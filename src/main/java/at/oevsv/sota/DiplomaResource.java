@@ -16,7 +16,7 @@
 
 package at.oevsv.sota;
 
-import at.oevsv.sota.data.ExternalDataService;
+import at.oevsv.sota.data.Rolls;
 import at.oevsv.sota.data.YearAwareFetcher;
 import at.oevsv.sota.data.api.Candidate;
 import at.oevsv.sota.data.api.DiplomaRequest;
@@ -34,7 +34,7 @@ import io.opentelemetry.instrumentation.annotations.SpanAttribute;
 import io.opentelemetry.instrumentation.annotations.WithSpan;
 import io.quarkus.cache.CacheResult;
 import io.quarkus.logging.Log;
-import io.smallrye.common.annotation.Blocking;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import io.smallrye.mutiny.Uni;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.mutiny.redis.client.RedisAPI;
@@ -52,7 +52,6 @@ import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.Response;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.rest.client.inject.RestClient;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -70,21 +69,31 @@ import static at.oevsv.sota.ValidationUtil.callSignsMatch;
 @Path("/api/diploma")
 public class DiplomaResource {
 
+    /**
+     * Counts a request and starts the bucket's expiry with the first one, in a single round trip to Redis.
+     */
+    private static final String COUNT_REQUEST_SCRIPT = """
+            local count = redis.call('INCR', KEYS[1])
+            if count == 1 then
+                redis.call('EXPIRE', KEYS[1], ARGV[1])
+            end
+            return count""";
+
     @ConfigProperty(name = "requests.per.minute", defaultValue = "5")
     int requestsPerMinute;
 
     @ConfigProperty(name = "check.after.date", defaultValue = "2023-01-01")
     LocalDate checkAfter;
 
-    private final ExternalDataService externalDataService;
+    private final Rolls rolls;
     private final YearAwareFetcher yearAwareFetcher;
     private final SummitList summitsService;
     private final DiplomaLogResource logs;
     private final RedisAPI redis;
 
     @Inject
-    public DiplomaResource(@RestClient ExternalDataService externalDataService, YearAwareFetcher yearAwareFetcher, SummitList summitsService, DiplomaLogResource logs, RedisAPI redis) {
-        this.externalDataService = externalDataService;
+    public DiplomaResource(Rolls rolls, YearAwareFetcher yearAwareFetcher, SummitList summitsService, DiplomaLogResource logs, RedisAPI redis) {
+        this.rolls = rolls;
         this.yearAwareFetcher = yearAwareFetcher;
         this.summitsService = summitsService;
         this.logs = logs;
@@ -92,15 +101,15 @@ public class DiplomaResource {
     }
 
     Collection<Activator> fetchActivators() {
-        return externalDataService.fetchActivators("0");
+        return rolls.activators("0");
     }
 
     Collection<Chaser> fetchChasers() {
-        return externalDataService.fetchChasers("0");
+        return rolls.chasers("0");
     }
 
     Collection<ShortWaveListener> fetchShortWaveListeners() {
-        return externalDataService.fetchShortWaveListeners("0");
+        return rolls.shortWaveListeners("0");
     }
 
     @WithSpan(kind = SpanKind.SERVER, value = "Fetch complete summit list")
@@ -108,7 +117,7 @@ public class DiplomaResource {
         return summitsService.list().stream().collect(Collectors.toMap(SummitListEntry::getSummitCode, x -> x));
     }
 
-    @CacheResult(cacheName = "userid-cache")
+    @CacheResult(cacheName = Rolls.USER_ID_CACHE)
     @Nullable
     @WithSpan(kind = SpanKind.SERVER, value = "Lookup UserID")
     public String userIdForCallSign(@SpanAttribute("callSign") @Nullable String callSign) {
@@ -138,7 +147,7 @@ public class DiplomaResource {
     @PermitAll
     @Path("/candidates")
     @Produces("application/json")
-    @Blocking
+    @RunOnVirtualThread
     @WithSpan(kind = SpanKind.SERVER, value = "Check Diploma")
     public Collection<SignedCandidate> checkCandidatesForUser(@SpanAttribute("callSign") @QueryParam("callsign") String callSign, @Context HttpServerRequest request) {
         enforceRateLimit(request);
@@ -177,20 +186,12 @@ public class DiplomaResource {
     private void enforceRateLimit(@Nullable HttpServerRequest request) {
         final var now = LocalDateTime.now();
         final var throttlingKey = getThrottlingKey(request) + ":" + now.getMinute();
-        final var requests = await(redis.get(throttlingKey));
+        final var requests = await(redis.eval(List.of(COUNT_REQUEST_SCRIPT, "1", throttlingKey, "60")));
         final int requestNumber = (requests != null) ? requests.toInteger() : 0;
-        if (requestNumber >= requestsPerMinute) {
+        if (requestNumber > requestsPerMinute) {
             Log.warnf("Exceeded %d requests per minute; key: %s", requestsPerMinute, throttlingKey);
             throw new WebApplicationException(Response.status(Response.Status.TOO_MANY_REQUESTS).header("X-Rate-Limit-Retry-After-Seconds", 60 - now.getSecond()).build());
         }
-
-        await(redis.multi());
-        try {
-            await(redis.incr(throttlingKey));
-            await(redis.expire(List.of(throttlingKey, "60")));
-        } finally {
-            await(redis.exec());
-        }
     }
 
     /**
@@ -226,7 +227,7 @@ public class DiplomaResource {
     @Path("/request")
     @Produces("application/json")
     @Consumes("application/json")
-    @Blocking
+    @RunOnVirtualThread
     @WithSpan(kind = SpanKind.SERVER, value = "Request Diploma")
     public boolean requestDiploma(@SpanAttribute("callSign") @QueryParam("callsign") String callSign, DiplomaRequest request) {
         return logs.create(request);
@@ -23,7 +23,7 @@ import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.instrumentation.annotations.WithSpan;
 import io.quarkus.cache.CacheResult;
 import io.quarkus.logging.Log;
-import io.smallrye.common.annotation.Blocking;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
@@ -56,7 +56,7 @@ public class StatisticResource {
     @RolesAllowed("admin")
     @Path("/day/{day}")
     @Produces("application/json")
-    @Blocking
+    @RunOnVirtualThread
     @WithSpan(kind = SpanKind.SERVER, value = "Check stats for day")
     public Map<String, Integer> checkStatsForDay(@PathParam("day") LocalDate date) {
         final var summits = summitsService.list();
@@ -16,9 +16,18 @@
 
 package at.oevsv.sota.data;
 
-import io.opentelemetry.instrumentation.annotations.WithSpan;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.quarkus.cache.Cache;
 import io.quarkus.cache.CacheManager;
+import io.quarkus.cache.CaffeineCache;
+import io.quarkus.logging.Log;
 import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -27,35 +36,151 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+/**
+ * Refreshes the caches once a day. Instead of purging all caches at once, which makes the next requests miss on all of
+ * them together, every cache is refreshed at its own time within a window after the schedule (see
+ * {@link #jitter(String, Duration)}). The rolls are reloaded in the background and swapped in, so readers never see
+ * them cold (see {@link Rolls}); caches derived from them are invalidated once all rolls have been reloaded. All other
+ * caches are invalidated. Scheduled refreshes take over rolls that another replica has just reloaded (see
+ * {@link SharedCache}), while refreshes requested by an admin always fetch them from upstream.
+ */
 @Path("/api/cache")
 @Consumes(MediaType.APPLICATION_JSON)
 @Produces(MediaType.APPLICATION_JSON)
 @ApplicationScoped
 public class CacheClearer {
 
+    private static final String INSTRUMENTATION_SCOPE = "at.oevsv.sota.data";
+
     private final CacheManager cacheManager;
+    private final Map<String, Function<Object, Object>> scheduledLoaders;
+    private final Map<String, Function<Object, Object>> freshLoaders;
+    private final Duration jitterWindow;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("cache-refresh-%d").setDaemon(true).build());
 
     @Inject
-    public CacheClearer(CacheManager cacheManager) {
+    public CacheClearer(CacheManager cacheManager, Rolls rolls,
+                        @ConfigProperty(name = "cache.refresh.jitter", defaultValue = "PT30M") Duration jitterWindow) {
         this.cacheManager = Objects.requireNonNull(cacheManager);
+        this.scheduledLoaders = rolls.loaders(true);
+        this.freshLoaders = rolls.loaders(false);
+        this.jitterWindow = jitterWindow;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
     }
 
+    /**
+     * Refreshes all caches right away; it returns before the refresh completes.
+     */
     @POST
     @Path("/cache/invalidate")
     @RolesAllowed("admin")
     public void clearAllCaches() {
-        doClearAllCaches();
+        final var context = Context.current();
+        for (final var cacheName : refreshedCacheNames()) {
+            executor.execute(context.wrap(() -> refresh(cacheName, freshLoaders)));
+        }
+        executor.execute(context.wrap(this::invalidateDerivedCaches));
     }
 
     @Scheduled(cron = "{cache.invalidation.cron}")
-    @WithSpan(value = "Clear Caches")
-    void doClearAllCaches() {
-        for (final var cacheName : cacheManager.getCacheNames()) {
-            cacheManager.getCache(cacheName).ifPresent(cache -> cache.invalidateAll().await().atMost(Duration.ofMinutes(1L)));
+    void refreshAllCaches() {
+        var last = Duration.ZERO;
+        for (final var cacheName : refreshedCacheNames()) {
+            final var delay = jitter(cacheName, jitterWindow);
+            executor.schedule(() -> refresh(cacheName), delay.toMillis(), TimeUnit.MILLISECONDS);
+            last = delay.compareTo(last) > 0 ? delay : last;
         }
+        // NB: the executor has a single thread and runs tasks due at the same time in order of submission, so this runs last
+        executor.schedule(this::invalidateDerivedCaches, last.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private List<String> refreshedCacheNames() {
+        return cacheManager.getCacheNames().stream().filter(cacheName -> !Rolls.USER_ID_CACHE.equals(cacheName)).toList();
+    }
+
+    void refresh(String cacheName) {
+        refresh(cacheName, scheduledLoaders);
+    }
+
+    private void refresh(String cacheName, Map<String, Function<Object, Object>> loaders) {
+        // NB: called from within this bean, where an interceptor such as @WithSpan would not apply
+        final var span = GlobalOpenTelemetry.getTracer(INSTRUMENTATION_SCOPE)
+                .spanBuilder("Refresh Cache")
+                .setAttribute("cache.name", cacheName)
+                .startSpan();
+        try (final var ignored = span.makeCurrent()) {
+            reload(cacheName, loaders);
+        } catch (RuntimeException e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    private void reload(String cacheName, Map<String, Function<Object, Object>> loaders) {
+        final var cache = cacheManager.getCache(cacheName);
+        if (cache.isEmpty()) {
+            return;
+        }
+
+        final var loader = loaders.get(cacheName);
+        if (loader == null) {
+            invalidate(cache.get());
+            return;
+        }
+
+        final long started = System.nanoTime();
+        final var caffeine = cache.get().as(CaffeineCache.class);
+        for (final var key : List.copyOf(caffeine.keySet())) {
+            try {
+                final var fresh = loader.apply(key);
+                if (fresh != null) {
+                    caffeine.put(key, CompletableFuture.completedFuture(fresh));
+                }
+            } catch (RuntimeException e) {
+                Log.warnf(e, "Could not reload %s for %s; keeping the cached one.", cacheName, key);
+            }
+        }
+        Log.infof("Reloaded %s in %d ms", cacheName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Invalidates the caches derived from the rolls, once all of them have been reloaded.
+     */
+    private void invalidateDerivedCaches() {
+        cacheManager.getCache(Rolls.USER_ID_CACHE).ifPresent(CacheClearer::invalidate);
+    }
+
+    private static void invalidate(Cache cache) {
+        cache.invalidateAll().await().atMost(Duration.ofMinutes(1L));
+    }
+
+    /**
+     * @return the delay of refreshing the cache after the schedule; stable per cache name, and spread over the window
+     */
+    @VisibleForTesting
+    static Duration jitter(String cacheName, Duration window) {
+        final long hash = Integer.toUnsignedLong(Hashing.murmur3_32_fixed().hashString(cacheName, StandardCharsets.UTF_8).asInt());
+        return Duration.ofMillis(window.toMillis() <= 0 ? 0L : hash % window.toMillis());
     }
 }
@@ -22,7 +22,6 @@ import at.oevsv.sota.data.domain.Chaser;
 import at.oevsv.sota.data.domain.ChaserLog;
 import at.oevsv.sota.data.domain.ShortWaveListener;
 import at.oevsv.sota.data.domain.SummitToSummitLog;
-import io.quarkus.cache.CacheResult;
 import io.quarkus.vertx.http.Compressed;
 import org.eclipse.microprofile.faulttolerance.Bulkhead;
 import org.eclipse.microprofile.faulttolerance.CircuitBreaker;
@@ -42,21 +41,18 @@ import java.util.Collection;
 @RegisterRestClient(configKey = "api-db")
 public interface ExternalDataService {
 
-    @CacheResult(cacheName = "activator-cache")
     @GET
     @Compressed
     @Path("/activator_roll")
     @Produces("application/json")
     Collection<Activator> fetchActivators(@DefaultValue("0") @QueryParam("associationID") String associationId);
 
-    @CacheResult(cacheName = "chaser-cache")
     @GET
     @Compressed
     @Path("/chaser_roll")
     @Produces("application/json")
     Collection<Chaser> fetchChasers(@DefaultValue("0") @QueryParam("associationID") String associationId);
 
-    @CacheResult(cacheName = "swl-cache")
     @GET
     @Compressed
     @Path("/swl_roll")
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data;
+
+import at.oevsv.sota.data.domain.Activator;
+import at.oevsv.sota.data.domain.Chaser;
+import at.oevsv.sota.data.domain.ShortWaveListener;
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.quarkus.cache.CacheResult;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The rolls of activators, chasers and short-wave listeners, cached per association. They are large and slow to
+ * fetch, so {@link CacheClearer} reloads them in the background (see {@link #loaders(boolean)}) instead of purging them.
+ * Replicas share them through the {@link SharedCache}, if enabled; concurrent fetches of a roll are collapsed by
+ * {@link SingleFlight}.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+public class Rolls {
+
+    public static final String ACTIVATOR_CACHE = "activator-cache";
+    public static final String CHASER_CACHE = "chaser-cache";
+    public static final String SWL_CACHE = "swl-cache";
+
+    /**
+     * Derived from the rolls; it is cheap to rebuild once they have been reloaded.
+     */
+    public static final String USER_ID_CACHE = "userid-cache";
+
+    private static final TypeReference<Collection<Activator>> ACTIVATORS = new TypeReference<>() {
+    };
+    private static final TypeReference<Collection<Chaser>> CHASERS = new TypeReference<>() {
+    };
+    private static final TypeReference<Collection<ShortWaveListener>> SHORT_WAVE_LISTENERS = new TypeReference<>() {
+    };
+
+    private final ExternalDataService externalDataService;
+    private final SharedCache sharedCache;
+    private final SingleFlight singleFlight;
+
+    @Inject
+    public Rolls(@RestClient ExternalDataService externalDataService, SharedCache sharedCache, SingleFlight singleFlight) {
+        this.externalDataService = externalDataService;
+        this.sharedCache = sharedCache;
+        this.singleFlight = singleFlight;
+    }
+
+    @CacheResult(cacheName = ACTIVATOR_CACHE)
+    public Collection<Activator> activators(String associationId) {
+        return sharedCache.roll(ACTIVATOR_CACHE, associationId, ACTIVATORS, () -> fetchActivators(associationId));
+    }
+
+    @CacheResult(cacheName = CHASER_CACHE)
+    public Collection<Chaser> chasers(String associationId) {
+        return sharedCache.roll(CHASER_CACHE, associationId, CHASERS, () -> fetchChasers(associationId));
+    }
+
+    @CacheResult(cacheName = SWL_CACHE)
+    public Collection<ShortWaveListener> shortWaveListeners(String associationId) {
+        return sharedCache.roll(SWL_CACHE, associationId, SHORT_WAVE_LISTENERS, () -> fetchShortWaveListeners(associationId));
+    }
+
+    /**
+     * @param reuseRecent whether a roll recently reloaded by another replica may be taken over from the shared cache
+     * @return by cache name, how to reload a roll for a key (the association) bypassing the local cache
+     */
+    Map<String, Function<Object, Object>> loaders(boolean reuseRecent) {
+        return Map.of(
+                ACTIVATOR_CACHE, key -> sharedCache.reloadRoll(ACTIVATOR_CACHE, (String) key, ACTIVATORS, reuseRecent,
+                        () -> fetchActivators((String) key)),
+                CHASER_CACHE, key -> sharedCache.reloadRoll(CHASER_CACHE, (String) key, CHASERS, reuseRecent,
+                        () -> fetchChasers((String) key)),
+                SWL_CACHE, key -> sharedCache.reloadRoll(SWL_CACHE, (String) key, SHORT_WAVE_LISTENERS, reuseRecent,
+                        () -> fetchShortWaveListeners((String) key)));
+    }
+
+    private Collection<Activator> fetchActivators(String associationId) {
+        return singleFlight.call(ACTIVATOR_CACHE, associationId, () -> externalDataService.fetchActivators(associationId));
+    }
+
+    private Collection<Chaser> fetchChasers(String associationId) {
+        return singleFlight.call(CHASER_CACHE, associationId, () -> externalDataService.fetchChasers(associationId));
+    }
+
+    private Collection<ShortWaveListener> fetchShortWaveListeners(String associationId) {
+        return singleFlight.call(SWL_CACHE, associationId, () -> externalDataService.fetchShortWaveListeners(associationId));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.vertx.mutiny.redis.client.Command;
+import io.vertx.mutiny.redis.client.Redis;
+import io.vertx.mutiny.redis.client.Request;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A second-level cache shared by all replicas, kept in Redis. Without it, every replica downloads its own copy of the
+ * rolls and of a user's logs; with it, a replica first asks its local cache, then Redis, and only then upstream.
+ * <p>
+ * Snapshots are stored as gzipped JSON, prefixed by a format version and the time they were written. Their keys
+ * contain the format version as well, so a replica never reads a snapshot it does not understand (see
+ * {@link #FORMAT}). Redis is an optimization only: if it is unreachable or slow, values are fetched from upstream.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+public class SharedCache {
+
+    /**
+     * Bump whenever the layout of a snapshot or of the cached types changes incompatibly; snapshots of older versions
+     * are then no longer found and expire on their own.
+     */
+    @VisibleForTesting
+    static final byte FORMAT = 1;
+
+    private static final String KEY_PREFIX = "sota:l2:v" + FORMAT + ":";
+
+    private final SharedCacheConfiguration configuration;
+    private final Redis redis;
+    private final ObjectMapper objectMapper;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter errorCounter;
+
+    @Inject
+    public SharedCache(SharedCacheConfiguration configuration, Redis redis, ObjectMapper objectMapper, MeterRegistry registry) {
+        this.configuration = configuration;
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.hitCounter = Counter.builder("cache.shared.hits").description("Values found in the shared cache").register(registry);
+        this.missCounter = Counter.builder("cache.shared.misses").description("Values fetched from upstream and shared").register(registry);
+        this.errorCounter = Counter.builder("cache.shared.errors").description("Failed reads or writes of the shared cache").register(registry);
+    }
+
+    /**
+     * @return the roll shared under <code>name</code> and <code>key</code>, fetching and sharing it if there is none
+     */
+    public <T> T roll(String name, String key, TypeReference<T> type, Supplier<T> loader) {
+        return get(name, key, type, configuration.rollTtl(), loader);
+    }
+
+    /**
+     * Reloads a roll, e.g. when the local cache is refreshed. As all replicas do so at about the same time, a snapshot
+     * shared recently (see {@link SharedCacheConfiguration#reuseWithin()}) is taken over if <code>reuseRecent</code>.
+     *
+     * @return the reloaded roll
+     */
+    public <T> T reloadRoll(String name, String key, TypeReference<T> type, boolean reuseRecent, Supplier<T> loader) {
+        if (!configuration.enabled()) {
+            return loader.get();
+        }
+
+        if (reuseRecent) {
+            final var snapshot = read(name, key, type);
+            if (snapshot != null && snapshot.written().isAfter(Instant.now().minus(configuration.reuseWithin()))) {
+                hitCounter.increment();
+                return snapshot.value();
+            }
+        }
+
+        return load(name, key, configuration.rollTtl(), loader);
+    }
+
+    /**
+     * @return the logs shared under <code>name</code> and <code>key</code>, fetching and sharing them if there are none
+     */
+    public <T> T logs(String name, String key, TypeReference<T> type, Supplier<T> loader) {
+        return get(name, key, type, configuration.logTtl(), loader);
+    }
+
+    private <T> T get(String name, String key, TypeReference<T> type, Duration ttl, Supplier<T> loader) {
+        if (!configuration.enabled()) {
+            return loader.get();
+        }
+
+        final var snapshot = read(name, key, type);
+        if (snapshot != null) {
+            hitCounter.increment();
+            return snapshot.value();
+        }
+
+        return load(name, key, ttl, loader);
+    }
+
+    private <T> T load(String name, String key, Duration ttl, Supplier<T> loader) {
+        missCounter.increment();
+        final T value = loader.get();
+        if (value != null) {
+            write(name, key, value, ttl);
+        }
+
+        return value;
+    }
+
+    @Nullable
+    private <T> Snapshot<T> read(String name, String key, TypeReference<T> type) {
+        try {
+            final var response = redis.send(Request.cmd(Command.GET).arg(redisKey(name, key))).await().atMost(configuration.timeout());
+            return response == null ? null : decode(objectMapper, response.toBytes(), type);
+        } catch (RuntimeException | IOException e) {
+            errorCounter.increment();
+            Log.warnf(e, "Could not read %s for %s from the shared cache", name, key);
+            return null;
+        }
+    }
+
+    private void write(String name, String key, Object value, Duration ttl) {
+        try {
+            final var payload = encode(objectMapper, value, Instant.now());
+            redis.send(Request.cmd(Command.SET).arg(redisKey(name, key)).arg(payload).arg("PX").arg(ttl.toMillis()))
+                    .await().atMost(configuration.timeout());
+        } catch (RuntimeException e) {
+            errorCounter.increment();
+            Log.warnf(e, "Could not write %s for %s to the shared cache", name, key);
+        }
+    }
+
+    @VisibleForTesting
+    static String redisKey(String name, String key) {
+        return KEY_PREFIX + name + ":" + key;
+    }
+
+    @VisibleForTesting
+    static byte[] encode(ObjectMapper objectMapper, Object value, Instant written) {
+        final var bytes = new ByteArrayOutputStream();
+        try (var data = new DataOutputStream(bytes)) {
+            data.writeByte(FORMAT);
+            data.writeLong(written.toEpochMilli());
+            try (var gzip = new GZIPOutputStream(data)) {
+                gzip.write(objectMapper.writeValueAsBytes(value));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the snapshot, or null if it was written in another format
+     */
+    @Nullable
+    @VisibleForTesting
+    static <T> Snapshot<T> decode(ObjectMapper objectMapper, byte[] payload, TypeReference<T> type) throws IOException {
+        try (var data = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (data.readByte() != FORMAT) {
+                return null;
+            }
+
+            final var written = Instant.ofEpochMilli(data.readLong());
+            try (var gzip = new GZIPInputStream(data)) {
+                return new Snapshot<>(objectMapper.readValue(gzip, type), written);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    record Snapshot<T>(T value, Instant written) {
+    }
+}
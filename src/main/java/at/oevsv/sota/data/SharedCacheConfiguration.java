@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * Settings of the {@link SharedCache}.
+ */
+@ConfigMapping(prefix = "cache.shared")
+public interface SharedCacheConfiguration {
+
+    /**
+     * @return whether snapshots are shared between replicas through Redis; if not, every replica fetches on its own
+     */
+    @WithDefault("false")
+    boolean enabled();
+
+    /**
+     * @return how long a snapshot of a roll is kept; it is replaced whenever a replica reloads the roll
+     */
+    @WithDefault("P1D")
+    Duration rollTtl();
+
+    /**
+     * @return how long a snapshot of a user's logs is kept, i.e. how stale logs may be when read from the shared cache
+     */
+    @WithDefault("PT10M")
+    Duration logTtl();
+
+    /**
+     * @return how old a snapshot of a roll may be to be taken over by a scheduled reload instead of fetching it again;
+     * should exceed <code>cache.refresh.jitter</code> so that only the first replica to reload fetches it
+     */
+    @WithDefault("PT1H")
+    Duration reuseWithin();
+
+    /**
+     * @return how long to wait for Redis before falling back to fetching from upstream
+     */
+    @WithDefault("PT2S")
+    Duration timeout();
+}
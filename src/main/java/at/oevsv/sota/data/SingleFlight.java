@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent identical upstream calls into one: while a call is in flight, callers asking for the same thing
+ * wait for its result (or its failure) instead of starting their own. Nothing is kept once the call completes; caching
+ * is left to the callers. Collapsed calls are counted as <code>upstream.calls.coalesced</code>, tagged by call.
+ * <p>
+ * The local caches already do this for their own misses, as they hold a pending value until it has been loaded; this
+ * covers what they do not, i.e. the per-user logs and reloads racing with misses.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+public class SingleFlight {
+
+    private final Map<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+
+    @Inject
+    public SingleFlight(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @param call what is called, e.g. the kind of data fetched
+     * @param key  the arguments of the call
+     * @return the result of <code>fetch</code>, or of an identical call already in flight
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String call, Object key, Supplier<T> fetch) {
+        final var id = List.of(call, key);
+        final var own = new CompletableFuture<>();
+        final var pending = inFlight.putIfAbsent(id, own);
+        if (pending != null) {
+            registry.counter("upstream.calls.coalesced", "call", call).increment();
+            return (T) await(pending);
+        }
+
+        try {
+            final T result = fetch.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, own);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package at.oevsv.sota.data;
 import at.oevsv.sota.data.domain.ActivatorLog;
 import at.oevsv.sota.data.domain.ChaserLog;
 import at.oevsv.sota.data.domain.SummitToSummitLog;
+import com.fasterxml.jackson.core.type.TypeReference;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
@@ -30,28 +31,51 @@ import java.time.Period;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 @ApplicationScoped
 public class YearAwareFetcher {
 
+    private static final TypeReference<Collection<ActivatorLog>> ACTIVATOR_LOGS = new TypeReference<>() {
+    };
+    private static final TypeReference<Collection<ChaserLog>> CHASER_LOGS = new TypeReference<>() {
+    };
+    private static final TypeReference<Collection<SummitToSummitLog>> S2S_LOGS = new TypeReference<>() {
+    };
+
     private final ExternalDataService externalDataService;
+    private final SharedCache sharedCache;
+    private final SingleFlight singleFlight;
 
     @Inject
-    public YearAwareFetcher(@RestClient ExternalDataService externalDataService) {
+    public YearAwareFetcher(@RestClient ExternalDataService externalDataService, SharedCache sharedCache, SingleFlight singleFlight) {
         this.externalDataService = externalDataService;
+        this.sharedCache = sharedCache;
+        this.singleFlight = singleFlight;
     }
 
     public Collection<ActivatorLog> fetchActivatorLogsById(String userId, @Nullable LocalDate checkAfter) {
-        return combineResultsForEveryYear(checkAfter, year -> externalDataService.fetchActivatorLogsById(userId, year));
+        return combineResultsForEveryYear(checkAfter, year -> fetch("activator-logs", userId, year, ACTIVATOR_LOGS,
+                () -> externalDataService.fetchActivatorLogsById(userId, year)));
     }
 
     public Collection<ChaserLog> fetchChaserLogsById(String userId, @Nullable LocalDate checkAfter) {
-        return combineResultsForEveryYear(checkAfter, year -> externalDataService.fetchChaserLogsById(userId, year));
+        return combineResultsForEveryYear(checkAfter, year -> fetch("chaser-logs", userId, year, CHASER_LOGS,
+                () -> externalDataService.fetchChaserLogsById(userId, year)));
     }
 
     public Collection<SummitToSummitLog> fetchSummitToSummitLogsById(String userId, @Nullable LocalDate checkAfter) {
-        return combineResultsForEveryYear(checkAfter, year -> externalDataService.fetchSummitToSummitLogsById(userId, year));
+        return combineResultsForEveryYear(checkAfter, year -> fetch("s2s-logs", userId, year, S2S_LOGS,
+                () -> externalDataService.fetchSummitToSummitLogsById(userId, year)));
+    }
+
+    /**
+     * Repeated requests for the same user, e.g. from repeated clicks, share a single fetch while it is in flight.
+     */
+    private <T> Collection<T> fetch(String name, String userId, String year, TypeReference<Collection<T>> type, Supplier<Collection<T>> upstream) {
+        final var key = userId + ":" + year;
+        return singleFlight.call(name, key, () -> sharedCache.logs(name, key, type, upstream));
     }
 
     private static <T> Collection<T> combineResultsForEveryYear(@Nullable LocalDate checkAfter, Function<String, Collection<T>> supplier) {
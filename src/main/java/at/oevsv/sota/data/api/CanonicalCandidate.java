@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data.api;
+
+import at.oevsv.sota.data.domain.Summit;
+import at.oevsv.sota.data.domain.jackson.CanonicalJson;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes the canonical JSON of a {@link Candidate} as UTF-8 straight into a stream, byte-identical to
+ * {@link CanonicalJson#calculate(Object)}: properties in alphabetical order, activations ordered by state, enums by
+ * name. Unlike the latter, it does not go through data binding and builds no intermediate string.
+ * <p>
+ * NB: adding a component to {@link Candidate} requires adding it here as well.
+ *
+ * @author schwingenschloegl
+ */
+final class CanonicalCandidate {
+
+    private static final JsonFactory FACTORY = JsonFactory.builder().disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+    private static final Summit.State[] STATES = Summit.State.values();
+
+    private CanonicalCandidate() {
+        throw new AssertionError();
+    }
+
+    static void write(Candidate candidate, OutputStream os) throws IOException {
+        // NB: the byte-based generator escapes characters outside the BMP, unlike the one behind writeValueAsString
+        try (JsonGenerator generator = FACTORY.createGenerator(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+            generator.writeStartObject();
+            writeActivations(generator, candidate.activations());
+            generator.writeStringField("callSign", candidate.callSign());
+            writeEnumField(generator, "category", candidate.category());
+            writeEnumField(generator, "rank", candidate.rank());
+            generator.writeStringField("userID", candidate.userID());
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeActivations(JsonGenerator generator, @Nullable Map<Summit.State, Long> activations) throws IOException {
+        generator.writeFieldName("activations");
+        if (activations == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartObject();
+        // NB: states compare by their declaration, so this is the order of a sorted map
+        for (final var state : STATES) {
+            if (activations.containsKey(state)) {
+                final Long count = activations.get(state);
+                generator.writeFieldName(state.name());
+                if (count != null) {
+                    generator.writeNumber(count.longValue());
+                } else {
+                    generator.writeNull();
+                }
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeEnumField(JsonGenerator generator, String name, @Nullable Enum<?> value) throws IOException {
+        generator.writeStringField(name, value != null ? value.name() : null);
+    }
+}
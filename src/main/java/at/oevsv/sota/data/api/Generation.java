@@ -23,6 +23,7 @@ import io.quarkus.runtime.annotations.RegisterForReflection;
 
 import javax.annotation.Nullable;
 import java.util.Locale;
+import java.util.Objects;
 
 @RegisterForReflection
 public class Generation {
@@ -44,8 +45,15 @@ public class Generation {
     @JsonDeserialize(converter = StringToLocaleConverter.class)
     private Locale locale = Locale.GERMAN;
 
-    @JsonProperty(defaultValue = "0.95")
-    private float quality = 0.95f;
+    @JsonProperty(defaultValue = "PRINT")
+    private RenderProfile profile = RenderProfile.PRINT;
+
+    /**
+     * JPEG quality of the raster images; defaults to the one of the {@link #profile}.
+     */
+    @JsonProperty
+    @Nullable
+    private Float quality;
 
     @SuppressWarnings("unused")
     public Generation() {
@@ -103,6 +111,18 @@ public class Generation {
     }
 
     public float getQuality() {
-        return quality;
+        return quality != null ? quality : profile.getQuality();
+    }
+
+    public RenderProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @param profile the profile to render for; <code>null</code> (e.g. <code>"profile": null</code>) means
+     *                {@link RenderProfile#PRINT}
+     */
+    public void setProfile(@Nullable RenderProfile profile) {
+        this.profile = Objects.requireNonNullElse(profile, RenderProfile.PRINT);
     }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data.api;
+
+/**
+ * What a diploma is rendered for; controls resolution and compression of the raster images (the text is vector data
+ * and unaffected). The artwork is drawn at 300 dpi.
+ *
+ * @author schwingenschloegl
+ */
+public enum RenderProfile {
+
+    /**
+     * Attachments of review mails and thumbnails; legible on screen, a fraction of the size.
+     */
+    PREVIEW(100, 0.6f),
+
+    /**
+     * Viewing on screen in full.
+     */
+    SCREEN(150, 0.8f),
+
+    /**
+     * Printing; the full resolution of the artwork.
+     */
+    PRINT(300, 0.95f);
+
+    private static final int ARTWORK_DPI = 300;
+
+    private final int dpi;
+    private final float quality;
+
+    RenderProfile(int dpi, float quality) {
+        this.dpi = dpi;
+        this.quality = quality;
+    }
+
+    public int getDpi() {
+        return dpi;
+    }
+
+    /**
+     * @return the JPEG quality used unless the generation specifies one explicitly
+     */
+    public float getQuality() {
+        return quality;
+    }
+
+    /**
+     * @return the factor to scale the artwork by, at most 1
+     */
+    public double getScale() {
+        return Math.min(1.0, dpi / (double) ARTWORK_DPI);
+    }
+}
@@ -16,11 +16,10 @@
 
 package at.oevsv.sota.data.api;
 
-import at.oevsv.sota.data.domain.jackson.CanonicalJson;
 import at.oevsv.sota.security.Hmac;
 import io.quarkus.logging.Log;
-import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 
@@ -38,23 +37,39 @@ public record SignedCandidate(Candidate candidate, String signature) {
         return new SignedCandidate(candidate, signature);
     }
 
+    /**
+     * Verifies the signature with any of the configured keys, so candidates signed by another instance are accepted.
+     */
     public void verifyIntegrity() throws IllegalStateException {
-        final var recreated = generateSignature(candidate);
-        if (!StringUtils.equals(recreated, signature)) {
+        if (!isSignatureValid()) {
             throw new IllegalStateException("Integrity of signed candidate cannot be verified!");
         }
     }
 
+    private boolean isSignatureValid() {
+        if (candidate == null) {
+            return signature == null;
+        }
+
+        try {
+            return Hmac.verify(signature, os -> CanonicalCandidate.write(candidate, os));
+        } catch (NoSuchAlgorithmException | InvalidKeyException | IOException e) {
+            Log.warnf(e, "Could not verify canonical JSON.");
+            return false;
+        }
+    }
+
+    /**
+     * Signs the canonical JSON of the candidate (see {@link CanonicalCandidate}), which is streamed into the MAC.
+     */
     private static String generateSignature(Candidate candidate) {
-        final var canonical = CanonicalJson.calculate(candidate);
-        if (canonical == null) {
+        if (candidate == null) {
             return null;
         }
 
-        // invariant: canonical != null
         try {
-            return Hmac.calculate(canonical);
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            return Hmac.sign(os -> CanonicalCandidate.write(candidate, os));
+        } catch (NoSuchAlgorithmException | InvalidKeyException | IOException e) {
             Log.warnf(e, "Could not sign canonical JSON.");
             return null;
         }
@@ -17,14 +17,17 @@
 package at.oevsv.sota.data.domain;
 
 import at.oevsv.sota.data.domain.jackson.RegexSummitDeserializer;
+import at.oevsv.sota.data.domain.jackson.RegexSummitSerializer;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import java.time.LocalDate;
 
 public record ActivatorLog(
         @JsonProperty(value = "Summit", required = true)
-        @JsonDeserialize(using = RegexSummitDeserializer.class) Summit summit,
+        @JsonDeserialize(using = RegexSummitDeserializer.class)
+        @JsonSerialize(using = RegexSummitSerializer.class) Summit summit,
         @JsonProperty("QSOs") int totalQSO,
         @JsonProperty("Points") int points,
         @JsonProperty("ActivationDate") LocalDate activationDate) {
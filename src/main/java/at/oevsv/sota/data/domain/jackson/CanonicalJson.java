@@ -19,6 +19,7 @@ package at.oevsv.sota.data.domain.jackson;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -26,7 +27,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.quarkus.logging.Log;
 
 import javax.annotation.Nullable;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Canonical JSON calculation for stable/consistent hash function.
@@ -46,16 +49,25 @@ public final class CanonicalJson {
         }
     }
 
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .nodeFactory(new SortingNodeFactory())
+            .build();
+
+    /**
+     * Writers are immutable and thread-safe; looking up the serializers happens once per type.
+     */
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
     @Nullable
     public static <T> String calculate(@Nullable T instance) {
         if (instance == null) {
             return null;
         }
 
-        ObjectMapper mapper = JsonMapper.builder().configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true).nodeFactory(new SortingNodeFactory()).build();
         try {
-            mapper.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
-            return mapper.writerFor(instance.getClass()).writeValueAsString(instance);
+            return WRITERS.computeIfAbsent(instance.getClass(), MAPPER::writerFor).writeValueAsString(instance);
         } catch (JsonProcessingException e) {
             Log.warnf(e, "Could not calculate canonical JSON.");
             return null;
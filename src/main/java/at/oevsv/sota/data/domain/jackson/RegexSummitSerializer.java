@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data.domain.jackson;
+
+import at.oevsv.sota.data.domain.Summit;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * The counterpart of {@link RegexSummitDeserializer}: writes a summit as a single JSON field containing its code and
+ * its name, so that it can be read back the way it was received.
+ * <p>
+ * Example values:
+ * <ul>
+ *     <li>"OE/OO-073 (Schoberstein)"</li>
+ * </ul>
+ *
+ * @author schwingenschloegl
+ */
+public final class RegexSummitSerializer extends StdSerializer<Summit> {
+
+    public RegexSummitSerializer() {
+        super(Summit.class);
+    }
+
+    @Override
+    public void serialize(Summit summit, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+        jsonGenerator.writeString(summit.code() + " (" + summit.name() + ")");
+    }
+}
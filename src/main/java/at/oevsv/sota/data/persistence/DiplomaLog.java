@@ -29,6 +29,8 @@ import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Version;
 
+import javax.annotation.Nullable;
+import java.time.Instant;
 import java.time.LocalDate;
 
 /**
@@ -102,6 +104,40 @@ public class DiplomaLog extends PanacheEntityBase {
     @Column(name = "language", length = 3)
     private String language;
 
+    /**
+     * The instance currently sending the review mail, see {@link DiplomaLogResource#claimPending(String, int, java.time.Duration)}.
+     */
+    @Column(name = "claimOwner", length = 64)
+    private String claimOwner;
+
+    /**
+     * The claim is void after this instant, e.g. if its owner died.
+     */
+    @Column(name = "claimExpiry")
+    private Instant claimExpiry;
+
+    /**
+     * The number of failed attempts to send the review mail.
+     */
+    @Column(name = "attempts")
+    private int attempts;
+
+    /**
+     * The review mail is not sent again before this instant, see
+     * {@link DiplomaLogResource#recordFailedAttempt(Long, String, String, int, java.util.function.IntFunction)}.
+     */
+    @Column(name = "nextAttempt")
+    private Instant nextAttempt;
+
+    @Column(name = "lastError", length = 1024)
+    private String lastError;
+
+    /**
+     * Sending the review mail failed too often; it is not attempted again until an admin asks for it.
+     */
+    @Column(name = "deadLettered")
+    private boolean deadLettered;
+
     @Version
     private int version;
 
@@ -121,6 +157,54 @@ public class DiplomaLog extends PanacheEntityBase {
         return reviewMailSent;
     }
 
+    public String getClaimOwner() {
+        return claimOwner;
+    }
+
+    public Instant getClaimExpiry() {
+        return claimExpiry;
+    }
+
+    void claim(String owner, Instant expiry) {
+        this.claimOwner = owner;
+        this.claimExpiry = expiry;
+    }
+
+    void releaseClaim() {
+        this.claimOwner = null;
+        this.claimExpiry = null;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public boolean isDeadLettered() {
+        return deadLettered;
+    }
+
+    void recordFailedAttempt(String error, @Nullable Instant next) {
+        ++this.attempts;
+        this.lastError = error;
+        this.nextAttempt = next;
+        this.deadLettered = next == null;
+        releaseClaim();
+    }
+
+    void retry() {
+        this.attempts = 0;
+        this.nextAttempt = null;
+        this.deadLettered = false;
+    }
+
     public String getCallSign() {
         return callSign;
     }
@@ -19,6 +19,7 @@ package at.oevsv.sota.data.persistence;
 import at.oevsv.sota.ValidationUtil;
 import at.oevsv.sota.data.api.Candidate;
 import at.oevsv.sota.data.api.DiplomaRequest;
+import at.oevsv.sota.data.api.Generation;
 import at.oevsv.sota.data.api.Requester;
 import at.oevsv.sota.data.api.SignedCandidate;
 import at.oevsv.sota.data.domain.Summit;
@@ -26,6 +27,9 @@ import io.quarkus.panache.common.Parameters;
 import jakarta.annotation.security.PermitAll;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.persistence.LockModeType;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
@@ -37,14 +41,21 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.LockOptions;
+import org.hibernate.cfg.AvailableSettings;
 import org.jetbrains.annotations.VisibleForTesting;
 
 import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntFunction;
 import java.util.function.IntSupplier;
 
 @Path("/api/logs")
@@ -53,6 +64,13 @@ import java.util.function.IntSupplier;
 @Consumes(MediaType.APPLICATION_JSON)
 public final class DiplomaLogResource {
 
+    private final Event<DiplomaRequestsCreated> created;
+
+    @Inject
+    public DiplomaLogResource(Event<DiplomaRequestsCreated> created) {
+        this.created = created;
+    }
+
     @POST
     @PermitAll
     @Transactional
@@ -74,7 +92,12 @@ public final class DiplomaLogResource {
             }
         }
 
-        return totalCreated > 0;
+        if (totalCreated > 0) {
+            created.fire(new DiplomaRequestsCreated(totalCreated));
+            return true;
+        }
+
+        return false;
     }
 
     private static boolean satisfiesRequirements(Candidate candidate) {
@@ -135,6 +158,11 @@ public final class DiplomaLogResource {
         return DiplomaLog.list("select s from DiplomaLog s where s.reviewMailSent = false");
     }
 
+    @Transactional
+    public List<DiplomaLog> findAllInternal(Collection<Long> ids) {
+        return DiplomaLog.list("select s from DiplomaLog s where s.id in ?1", ids);
+    }
+
     @PUT
     @RolesAllowed("admin")
     @Path("/{id}")
@@ -154,7 +182,130 @@ public final class DiplomaLogResource {
         final DiplomaLog entity = DiplomaLog.findById(id);
         if (entity != null) {
             entity.setReviewMailSent(true);
+            entity.releaseClaim();
+        }
+    }
+
+    /**
+     * Marks requests whose review mail has been sent together and releases their claims. Only requests still claimed
+     * by <code>owner</code> are marked; the others have been claimed by another instance meanwhile.
+     *
+     * @return the number of requests marked
+     */
+    @Transactional
+    public int markReviewMailSent(Collection<Long> ids, String owner) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        final List<DiplomaLog> entities = DiplomaLog.list("id in ?1 and claimOwner = ?2", ids, owner);
+        for (final var entity : entities) {
+            entity.setReviewMailSent(true);
+            entity.releaseClaim();
         }
+        return entities.size();
+    }
+
+    /**
+     * Claims a batch of pending requests for sending their review mails, so no other instance sends them as well. Rows
+     * locked by a concurrent claim are skipped instead of waited for; claims that have expired (e.g. because their
+     * owner died) can be claimed again. Requests waiting for their next attempt or dead-lettered are not claimed.
+     *
+     * @param owner     identifies the claiming instance
+     * @param batchSize the maximum number of requests to claim
+     * @param lease     how long the claim is valid
+     * @return the claimed requests, in order of their creation
+     */
+    @Transactional
+    public List<DiplomaLog> claimPending(String owner, int batchSize, Duration lease) {
+        final var now = Instant.now();
+        final List<DiplomaLog> claimed = DiplomaLog.<DiplomaLog>find("reviewMailSent = false and deadLettered = false "
+                        + "and (nextAttempt is null or nextAttempt <= ?1) and (claimExpiry is null or claimExpiry < ?1) order by id", now)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .withHint(AvailableSettings.JAKARTA_LOCK_TIMEOUT, LockOptions.SKIP_LOCKED)
+                .page(0, batchSize)
+                .list();
+        final var expiry = now.plus(lease);
+        claimed.forEach(entity -> entity.claim(owner, expiry));
+        return claimed;
+    }
+
+    /**
+     * Extends the claims of the given owner, e.g. right before sending a review mail, so a run that takes longer than
+     * the lease does not race another instance that claims the same requests.
+     *
+     * @return whether all requests are still claimed by <code>owner</code>; if not, none of the claims is extended
+     */
+    @Transactional
+    public boolean renewClaims(Collection<Long> ids, String owner, Duration lease) {
+        final var now = Instant.now();
+        final List<DiplomaLog> entities = DiplomaLog.<DiplomaLog>find("id in ?1 and claimOwner = ?2 and claimExpiry >= ?3", ids, owner, now)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .list();
+        if (entities.size() != ids.size()) {
+            return false;
+        }
+        final var expiry = now.plus(lease);
+        entities.forEach(entity -> entity.claim(owner, expiry));
+        return true;
+    }
+
+    /**
+     * Releases the claims of the given owner, so the requests are picked up by the next run of any instance.
+     */
+    @Transactional
+    public void releaseClaims(Collection<Long> ids, String owner) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final List<DiplomaLog> entities = DiplomaLog.list("id in ?1 and claimOwner = ?2", ids, owner);
+        entities.forEach(DiplomaLog::releaseClaim);
+    }
+
+    /**
+     * Records a failed attempt to send the review mail and releases the claim. The request is retried after the
+     * backoff, unless it has failed <code>maxAttempts</code> times; then it is dead-lettered.
+     *
+     * @param error       describes the failure
+     * @param maxAttempts the number of attempts after which the request is dead-lettered
+     * @param backoff     the delay before the next attempt, given the number of failed attempts so far
+     * @return whether the request has been dead-lettered
+     */
+    @Transactional
+    public boolean recordFailedAttempt(Long id, String owner, String error, int maxAttempts, IntFunction<Duration> backoff) {
+        final DiplomaLog entity = DiplomaLog.findById(id);
+        if (entity == null || !Objects.equals(owner, entity.getClaimOwner())) {
+            return false;
+        }
+
+        final int attempts = entity.getAttempts() + 1;
+        final var next = attempts < maxAttempts ? Instant.now().plus(backoff.apply(attempts)) : null;
+        entity.recordFailedAttempt(StringUtils.abbreviate(error, 1024), next);
+        return entity.isDeadLettered();
+    }
+
+    @GET
+    @RolesAllowed("admin")
+    @Path("/dead-letter")
+    @Transactional
+    public List<DiplomaLog> listDeadLettered() {
+        return DiplomaLog.list("deadLettered = true order by id");
+    }
+
+    /**
+     * Sends the review mail of a dead-lettered request again, with the next run.
+     */
+    @POST
+    @RolesAllowed("admin")
+    @Path("/{id}/retry")
+    @Transactional
+    public DiplomaLog retry(@PathParam("id") Long id) {
+        final DiplomaLog entity = DiplomaLog.findById(id);
+        if (entity == null) {
+            throw new NotFoundException();
+        }
+
+        entity.retry();
+        return entity;
     }
 
     @Transactional
@@ -196,6 +347,24 @@ public final class DiplomaLogResource {
         return StringUtils.equalsIgnoreCase(diplomaLog.getLanguage(), "en") ? Locale.ENGLISH : Locale.GERMAN;
     }
 
+    /**
+     * Special diplomas are numbered in their own sequence; all others use the ID of the log entry.
+     */
+    public static int toSequence(DiplomaLog diplomaLog) {
+        if (diplomaLog.getCategory() == Candidate.Category.OE20SOTA) {
+            return diplomaLog.getOe20();
+        }
+        return diplomaLog.id.intValue();
+    }
+
+    public static Generation toGeneration(DiplomaLog diplomaLog) {
+        final var generation = new Generation(toRequester(diplomaLog), toCandidate(diplomaLog));
+        generation.setSequence(toSequence(diplomaLog));
+        generation.setSequenceSuffix(null);
+        generation.setLocale(toRequestedLocale(diplomaLog));
+        return generation;
+    }
+
     private static void checkAndAdd(IntSupplier check, Summit.State state, Map<Summit.State, Long> target) {
         final var value = check.getAsInt();
         if (value > 0) {
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data.persistence;
+
+/**
+ * Fired by {@link DiplomaLogResource#create(at.oevsv.sota.data.api.DiplomaRequest)} whenever new diploma requests have
+ * been logged. Observe it with {@code during = TransactionPhase.AFTER_SUCCESS} to see committed requests only.
+ *
+ * @param count the number of requests logged
+ */
+public record DiplomaRequestsCreated(int count) {
+}
@@ -25,7 +25,7 @@ import io.opentelemetry.instrumentation.annotations.WithSpan;
 import io.quarkus.logging.Log;
 import io.quarkus.runtime.StartupEvent;
 import io.quarkus.scheduler.Scheduled;
-import io.smallrye.common.annotation.Blocking;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.annotation.security.PermitAll;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -83,7 +83,7 @@ public final class SummitList {
 
     @POST
     @RolesAllowed("admin")
-    @Blocking
+    @RunOnVirtualThread
     @Path("/synchronize")
     @Transactional
     public void synchronize() {
@@ -17,9 +17,11 @@
 package at.oevsv.sota.mail;
 
 import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import java.time.Duration;
+import java.util.Optional;
 import java.util.Set;
 
 @ConfigMapping(prefix = "diploma.mailing")
@@ -29,4 +31,64 @@ public interface MailingConfiguration {
 
     @ConfigProperty(defaultValue = "PT10S")
     Duration timeout();
+
+    /**
+     * @return how many review mails are rendered at once
+     */
+    @WithDefault("2")
+    int renderConcurrency();
+
+    /**
+     * @return how many rendered review mails may wait for being sent
+     */
+    @WithDefault("4")
+    int queueSize();
+
+    /**
+     * @return whether review mails are sent as soon as requests are created; if not, only the scheduled sweep sends them
+     */
+    @WithDefault("true")
+    boolean dispatchOnCreate();
+
+    /**
+     * @return how many pending requests of one requester are bundled into a single review mail; 1 sends a mail per
+     * request
+     */
+    @WithDefault("10")
+    int digestSize();
+
+    /**
+     * @return identifies this instance when claiming pending requests; defaults to the host name and a random suffix
+     */
+    Optional<String> instanceId();
+
+    /**
+     * @return how many pending requests are claimed at once
+     */
+    @WithDefault("25")
+    int batchSize();
+
+    /**
+     * @return how long a claim on pending requests is valid; must exceed the time needed to send a batch
+     */
+    @WithDefault("PT15M")
+    Duration claimLease();
+
+    /**
+     * @return after how many failed attempts a review mail is dead-lettered
+     */
+    @WithDefault("8")
+    int maxAttempts();
+
+    /**
+     * @return the delay after the first failed attempt; it doubles with every further one
+     */
+    @WithDefault("PT5M")
+    Duration retryBackoff();
+
+    /**
+     * @return the maximum delay between attempts
+     */
+    @WithDefault("PT6H")
+    Duration maxRetryBackoff();
 }
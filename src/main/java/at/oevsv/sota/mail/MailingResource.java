@@ -18,25 +18,31 @@ package at.oevsv.sota.mail;
 
 import at.oevsv.sota.data.api.Candidate;
 import at.oevsv.sota.data.api.Generation;
+import at.oevsv.sota.data.api.RenderProfile;
 import at.oevsv.sota.data.api.Requester;
 import at.oevsv.sota.data.domain.Summit;
 import at.oevsv.sota.data.persistence.DiplomaLog;
 import at.oevsv.sota.data.persistence.DiplomaLogResource;
 import at.oevsv.sota.pdf.PdfGenerationResource;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import at.oevsv.sota.pdf.RenderingCapacityExceededException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.instrumentation.annotations.WithSpan;
 import io.quarkus.logging.Log;
 import io.quarkus.mailer.Mail;
 import io.quarkus.mailer.reactive.ReactiveMailer;
 import io.quarkus.scheduler.Scheduled;
-import io.smallrye.common.annotation.Blocking;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import jakarta.transaction.Transactional;
-import jakarta.validation.constraints.Max;
-import jakarta.validation.constraints.Min;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.POST;
@@ -44,101 +50,303 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import org.apache.commons.lang3.StringUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.faulttolerance.Bulkhead;
 
 import javax.annotation.Nonnull;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.text.MessageFormat;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.MissingResourceException;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 @ApplicationScoped
 @Path("/api/mail")
 public class MailingResource {
 
-    @ConfigProperty(name = "pdf.preview.quality", defaultValue = "95")
-    @Min(1L)
-    @Max(100L)
-    int previewQuality;
+    @ConfigProperty(name = "pdf.preview.profile", defaultValue = "PREVIEW")
+    RenderProfile previewProfile;
 
-    private final ThreadFactory threadFactory =
-            new ThreadFactoryBuilder().setNameFormat("mailing-worker-%d").build();
-    private final ExecutorService executor = Executors.newFixedThreadPool(1, threadFactory);
+    /**
+     * Superseded by <code>pdf.preview.profile</code>; still honoured, so existing overrides keep working.
+     */
+    @ConfigProperty(name = "pdf.preview.quality")
+    Optional<Integer> legacyPreviewQuality;
 
     private final MailingConfiguration configuration;
     private final PdfGenerationResource generator;
     private final DiplomaLogResource diplomaLog;
     private final ReactiveMailer mailer;
+    private final String instanceId;
+    private final int concurrency;
+    private final ExecutorService executor;
+    private final RenderSendPipeline<PendingReview, ReviewMail> pipeline;
+    private final Timer runTimer;
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter deadLetterCounter;
+    private final AtomicReference<Double> throughput = new AtomicReference<>(0.0);
+
+    /**
+     * Pending requests of the same requester, reviewed with a single mail.
+     */
+    private record PendingReview(List<DiplomaLog> logs) {
+
+        List<Long> ids() {
+            return logs.stream().map(log -> log.id).toList();
+        }
+
+        @Override
+        public String toString() {
+            return (logs.size() == 1 ? "request " : "requests ") + StringUtils.join(ids(), ", ");
+        }
+    }
+
+    /**
+     * Identifies the requester of a pending request for bundling them.
+     */
+    private record RequesterKey(String callSign, String mail, String name) {
+
+        static RequesterKey of(DiplomaLog log) {
+            return new RequesterKey(log.getCallSign(), StringUtils.toRootLowerCase(log.getMail()), log.getName());
+        }
+    }
+
+    /**
+     * A review mail ready to be sent, with a preview for every candidate.
+     */
+    private record ReviewMail(Requester requester, List<Candidate> candidates, List<Attachment> attachments) {
+    }
+
+    /**
+     * A preview; the file is temporary.
+     */
+    private record Attachment(String fileName, File file) {
+    }
 
     @Inject
-    public MailingResource(MailingConfiguration configuration, PdfGenerationResource generator, DiplomaLogResource diplomaLog, ReactiveMailer mailer) {
+    public MailingResource(MailingConfiguration configuration, PdfGenerationResource generator, DiplomaLogResource diplomaLog, ReactiveMailer mailer,
+                           @ConfigProperty(name = "quarkus.mailer.max-pool-size", defaultValue = "10") int concurrency, MeterRegistry registry) {
         this.configuration = configuration;
         this.generator = generator;
         this.diplomaLog = diplomaLog;
         this.mailer = mailer;
+        this.instanceId = configuration.instanceId().orElseGet(MailingResource::defaultInstanceId);
+        // NB: there is no point in sending more mails at once than the mailer has connections
+        this.concurrency = Math.max(1, concurrency);
+        // NB: renders only wait for the rendering pool (see PdfRenderingService) and senders for the mail server
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mailing-", 0L).factory());
+        this.pipeline = new RenderSendPipeline<>(executor, Math.max(1, configuration.renderConcurrency()), this.concurrency,
+                Math.max(1, configuration.queueSize()), registry);
+
+        this.runTimer = Timer.builder("mailing.review.run").description("Time to send all pending review mails").register(registry);
+        this.sentCounter = Counter.builder("mailing.review.sent").description("Review mails sent").register(registry);
+        this.failedCounter = Counter.builder("mailing.review.failed").description("Review mails that could not be sent").register(registry);
+        this.deadLetterCounter = Counter.builder("mailing.review.dead-lettered").description("Review mails given up on").register(registry);
+        registry.gauge("mailing.review.throughput", throughput, AtomicReference::get);
     }
 
+    @Nonnull
+    private static String defaultInstanceId() {
+        final var host = StringUtils.defaultIfBlank(System.getenv("HOSTNAME"), "instance");
+        return StringUtils.truncate(host, 55) + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @PostConstruct
+    void checkLegacySettings() {
+        legacyPreviewQuality.ifPresent(quality -> Log.warnf(
+                "pdf.preview.quality is deprecated; use pdf.preview.profile instead. Rendering previews as %s with quality %d for now.",
+                previewProfile, quality));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends all pending requests for review. Requests are claimed in batches (see
+     * {@link DiplomaLogResource#claimPending(String, int, Duration)}), so several instances can share the work without
+     * sending duplicates. Previews are rendered while previous mails are being sent (see {@link RenderSendPipeline});
+     * every request is marked in a transaction of its own as soon as its mail is sent, so a failure only affects the
+     * request at hand. Failed requests are retried with exponential backoff and dead-lettered after
+     * {@link MailingConfiguration#maxAttempts()} attempts; retries reuse the stored preview (see
+     * {@link at.oevsv.sota.pdf.RenderedDiplomaStore}) as long as it is valid.
+     * <p>
+     * New requests are sent right away (see {@link ReviewDispatcher}); the schedule only sweeps up what was left behind.
+     */
     @Scheduled(cron = "{pending.requests.check.cron}")
     @Bulkhead(value = 1, waitingTaskQueue = 1)
-    @Blocking
-    @Transactional
+    @RunOnVirtualThread
     @WithSpan(kind = SpanKind.SERVER, value = "sendPendingRequests")
     public void sendPendingRequests() {
-        final var pendingRequests = diplomaLog.listPendingInternal();
-        if (!pendingRequests.isEmpty()) {
-            Log.infof("Sending %d pending diploma requests for review.", pendingRequests.size());
-        }
+        final long started = System.nanoTime();
+        final List<Long> failed = new ArrayList<>();
+        int total = 0;
         int successful = 0;
-        for (final var pending : pendingRequests) {
-            final var requester = DiplomaLogResource.toRequester(pending);
-            final var candidate = DiplomaLogResource.toCandidate(pending);
-            final var locale = DiplomaLogResource.toRequestedLocale(pending);
+        try {
+            List<DiplomaLog> batch;
+            while (!(batch = diplomaLog.claimPending(instanceId, configuration.batchSize(), configuration.claimLease())).isEmpty()) {
+                Log.infof("Sending %d pending diploma requests for review as %s (%d at once).", batch.size(), instanceId, concurrency);
+                final var sent = pipeline.run(bundle(batch, configuration.digestSize()),
+                        this::prepareReviewMail,
+                        this::sendReviewMail,
+                        MailingResource::deleteAttachments,
+                        this::recordFailedAttempt);
 
-            try {
-                final int sequence = sequenceOf(pending);
-                sendDiplomaForReview(requester, candidate, sequence, locale);
-                Log.debugf("Marking request with ID %d as review-mail-sent", pending.id);
-                diplomaLog.markReviewMailSent(pending.id);
-                Log.debugf("Marked request with ID %d as review-mail-sent", pending.id);
-                ++successful;
-            } catch (IOException | MissingResourceException e) {
-                Log.warnf(e, "Could not send request %d for review!", pending.id);
+                total += batch.size();
+                final var sentIds = sent.stream().flatMap(pending -> pending.ids().stream()).collect(Collectors.toSet());
+                successful += sentIds.size();
+                batch.stream().map(pending -> pending.id).filter(id -> !sentIds.contains(id)).forEach(failed::add);
             }
+        } finally {
+            diplomaLog.releaseClaims(failed, instanceId);
         }
-        if (!pendingRequests.isEmpty()) {
-            Log.infof("Sent %d (of %d) pending diploma requests for review.", successful, pendingRequests.size());
+        if (total == 0) {
+            return;
         }
+
+        final long elapsed = System.nanoTime() - started;
+        runTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        sentCounter.increment(successful);
+        failedCounter.increment(total - (double) successful);
+        final double perSecond = successful / Math.max(elapsed / 1.0e9, 1.0e-3);
+        throughput.set(perSecond);
+        Log.infof("Sent %d (of %d) pending diploma requests for review in %d ms (%.2f per second).",
+                successful, total, TimeUnit.NANOSECONDS.toMillis(elapsed), perSecond);
+    }
+
+    /**
+     * Bundles the pending requests of each requester into reviews of at most <code>digestSize</code> requests, keeping
+     * the order of the batch.
+     */
+    private static List<PendingReview> bundle(List<DiplomaLog> batch, int digestSize) {
+        final Map<RequesterKey, List<DiplomaLog>> byRequester = batch.stream()
+                .collect(Collectors.groupingBy(RequesterKey::of, LinkedHashMap::new, Collectors.toList()));
+        return byRequester.values().stream()
+                .flatMap(logs -> Lists.partition(logs, Math.max(1, digestSize)).stream())
+                .map(logs -> new PendingReview(List.copyOf(logs)))
+                .toList();
     }
 
-    private int sequenceOf(DiplomaLog pending) {
-        if (pending.getCategory() == Candidate.Category.OE20SOTA) {
-            return pending.getOe20();
+    private void recordFailedAttempt(PendingReview pending, Exception error) {
+        if (!countsAsAttempt(error)) {
+            // NB: the claim is released at the end of the run, so the requests are retried on the next one
+            Log.infof("Rendering is saturated; deferring the review mail for %s to the next run.", pending);
+            return;
+        }
+
+        for (final var log : pending.logs()) {
+            if (diplomaLog.recordFailedAttempt(log.id, instanceId, error.toString(), configuration.maxAttempts(), this::backoffFor)) {
+                deadLetterCounter.increment();
+                Log.errorf("Gave up sending the review mail for request with ID %d after %d attempts.", log.id, configuration.maxAttempts());
+            }
+        }
+    }
+
+    /**
+     * @return whether <code>error</code> counts towards {@link MailingConfiguration#maxAttempts()}; a saturated
+     * rendering pool says nothing about the request, so it must not dead-letter a request
+     */
+    @VisibleForTesting
+    static boolean countsAsAttempt(Exception error) {
+        return Throwables.getCausalChain(error).stream().noneMatch(RenderingCapacityExceededException.class::isInstance);
+    }
+
+    /**
+     * @return the delay before the next attempt, doubling with every failed attempt up to the configured maximum
+     */
+    private Duration backoffFor(int attempts) {
+        return backoff(configuration.retryBackoff(), configuration.maxRetryBackoff(), attempts);
+    }
+
+    @VisibleForTesting
+    static Duration backoff(Duration initial, Duration maximum, int attempts) {
+        final int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+        final var delay = initial.multipliedBy(1L << doublings);
+        return delay.compareTo(maximum) < 0 ? delay : maximum;
+    }
+
+    @Nonnull
+    private ReviewMail prepareReviewMail(PendingReview pending) throws IOException {
+        final var requester = DiplomaLogResource.toRequester(pending.logs().get(0));
+        final List<Candidate> candidates = new ArrayList<>(pending.logs().size());
+        final List<Attachment> attachments = new ArrayList<>(pending.logs().size());
+        try {
+            for (final var log : pending.logs()) {
+                final var candidate = DiplomaLogResource.toCandidate(log);
+                final var locale = DiplomaLogResource.toRequestedLocale(log);
+                final int sequence = DiplomaLogResource.toSequence(log);
+                attachments.add(preparePreview(requester, candidate, sequence, locale));
+                candidates.add(candidate);
+            }
+        } catch (IOException | RuntimeException e) {
+            attachments.forEach(attachment -> deleteQuietly(attachment.file()));
+            throw e;
+        }
+        return new ReviewMail(requester, List.copyOf(candidates), List.copyOf(attachments));
+    }
+
+    /**
+     * Sends the mail and marks the requests, in a transaction of its own. The claims are renewed first; if one of them
+     * has expired and been taken over by another instance, the mail is left to that instance.
+     */
+    private void sendReviewMail(PendingReview pending, ReviewMail mail) {
+        if (!diplomaLog.renewClaims(pending.ids(), instanceId, configuration.claimLease())) {
+            throw new IllegalStateException("The claim on " + pending + " has expired; leaving it to the instance that claimed it since.");
+        }
+        sendReviewMail(mail);
+        Log.debugf("Marking %s as review-mail-sent", pending);
+        final int marked = diplomaLog.markReviewMailSent(pending.ids(), instanceId);
+        if (marked != pending.ids().size()) {
+            Log.warnf("Sent %s, but only %d of them were still claimed by %s; they might be sent again.", pending, marked, instanceId);
+        } else {
+            Log.debugf("Marked %s as review-mail-sent", pending);
         }
-        return pending.id.intValue();
     }
 
     @WithSpan(kind = SpanKind.SERVER, value = "sendDiplomaForReview")
     public void sendDiplomaForReview(Requester requester, Candidate candidate, int sequence, Locale locale) throws IOException {
-        final var template = Templates.reviewRequest(requester, List.of(candidate));
-        final var mail = new Mail();
+        final var mail = new ReviewMail(requester, List.of(candidate), List.of(preparePreview(requester, candidate, sequence, locale)));
+        try {
+            sendReviewMail(mail);
+        } finally {
+            deleteAttachments(mail);
+        }
+    }
+
+    @Nonnull
+    private Attachment preparePreview(Requester requester, Candidate candidate, int sequence, Locale locale) throws IOException {
         final var fileName = generator.fileNameFor(generationParameter(requester, candidate, sequence));
-        final var generatedPdf = generatePreviewPdf(requester, candidate, sequence, locale, fileName);
-        mail.addAttachment(fileName, generatedPdf, "application/pdf");
+        return new Attachment(fileName, generatePreviewPdf(requester, candidate, sequence, locale, fileName));
+    }
+
+    private void sendReviewMail(ReviewMail reviewMail) {
+        final var requester = reviewMail.requester();
+        final var template = Templates.reviewRequest(requester, reviewMail.candidates());
+        final var mail = new Mail();
+        reviewMail.attachments().forEach(attachment -> mail.addAttachment(attachment.fileName(), attachment.file(), "application/pdf"));
         template.mail(mail);
 
         template.subject(MessageFormat.format("Diplom-Anfrage von {0} ({1})", requester.name, requester.callSign));
         template.from("\"SOTA Diplome\" <no-reply@oevsv.at>");
         template.to(configuration.recipients().toArray(new String[]{}));
 
+        // NB: the mailer does not block; the calling thread merely awaits the result
         template.send()
-                .runSubscriptionOn(executor)
                 .onSubscription().invoke(subscription -> Log.debugf("Subscribed (%s)!", subscription))
                 .onFailure().invoke(throwable -> Log.warn("Could not send mail.", throwable))
                 .onItem().invoke(() -> Log.info("Successfully sent mail."))
@@ -147,12 +355,30 @@ public class MailingResource {
         Log.debug("Mail sent.");
     }
 
+    /**
+     * Generates the preview into a temporary file, which is attached to the mail without loading it into memory.
+     *
+     * @return a temporary file; the caller is responsible for deleting it
+     */
     @Nonnull
-    private byte[] generatePreviewPdf(Requester requester, Candidate candidate, int sequence, Locale locale, String fileName) throws IOException {
+    private File generatePreviewPdf(Requester requester, Candidate candidate, int sequence, Locale locale, String fileName) throws IOException {
         final Generation parameter = generationParameter(requester, candidate, sequence);
-        parameter.setQuality(previewQuality / 100.0f);
+        parameter.setProfile(previewProfile);
+        legacyPreviewQuality.ifPresent(quality -> parameter.setQuality(quality / 100.0f));
         parameter.setLocale(locale);
-        return generator.generatePdfBytes(parameter, fileName);
+        return generator.generatePdfFile(parameter, fileName);
+    }
+
+    private static void deleteAttachments(ReviewMail mail) {
+        mail.attachments().forEach(attachment -> deleteQuietly(attachment.file()));
+    }
+
+    private static void deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            Log.warnf(e, "Could not delete temporary file %s", file);
+        }
     }
 
     @Nonnull
@@ -166,7 +392,7 @@ public class MailingResource {
     @POST
     @Path("test")
     @RolesAllowed("admin")
-    @Blocking
+    @RunOnVirtualThread
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public void testMail(@QueryParam("to") String recipient, @QueryParam("templated") @DefaultValue("true") boolean templated) throws IOException {
@@ -175,8 +401,13 @@ public class MailingResource {
         if (templated) {
             sendDiplomaForReview(requester, candidate, 9999, Locale.GERMAN);
         } else {
-            mailer.send(new Mail().setSubject("ÖVSV Mailing Test").addTo(recipient).setText("Auto-generated test mail")
-                    .addAttachment("test.pdf", generatePreviewPdf(requester, candidate, 9999, Locale.GERMAN, "test.pdf"), "application/pdf")).await().atMost(Duration.ofMinutes(5L));
+            final var generatedPdf = generatePreviewPdf(requester, candidate, 9999, Locale.GERMAN, "test.pdf");
+            try {
+                mailer.send(new Mail().setSubject("ÖVSV Mailing Test").addTo(recipient).setText("Auto-generated test mail")
+                        .addAttachment("test.pdf", generatedPdf, "application/pdf")).await().atMost(Duration.ofMinutes(5L));
+            } finally {
+                deleteQuietly(generatedPdf);
+            }
         }
     }
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.mail;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.context.Context;
+import io.quarkus.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes items in two stages running concurrently: a render stage preparing each item (e.g. rendering the
+ * attachment of a mail), and a send stage consuming the prepared items. Between both is a bounded queue; renders block
+ * while it is full, so they cannot run ahead of sending by more than its capacity. Both stages are meant to run on
+ * virtual threads, as they mostly wait (for the rendering pool, or for the mail server); their concurrency is bounded
+ * by a semaphore and the number of senders respectively.
+ * <p>
+ * Publishes <code>mailing.pipeline.stage</code> (per stage), <code>mailing.pipeline.queue.wait</code> and the
+ * <code>mailing.pipeline.queue.depth</code> gauge.
+ *
+ * @param <I> the type of the items
+ * @param <P> the type of the prepared items
+ * @author schwingenschloegl
+ */
+final class RenderSendPipeline<I, P> {
+
+    /**
+     * Prepares an item.
+     */
+    @FunctionalInterface
+    interface RenderStage<I, P> {
+        P render(I item) throws IOException;
+    }
+
+    /**
+     * Sends a prepared item.
+     */
+    @FunctionalInterface
+    interface SendStage<I, P> {
+        void send(I item, P prepared) throws IOException;
+    }
+
+    /**
+     * Releases a prepared item once it is sent or discarded.
+     */
+    @FunctionalInterface
+    interface Release<P> {
+        void release(P prepared);
+    }
+
+    /**
+     * Is told about an item that could not be prepared or sent.
+     */
+    @FunctionalInterface
+    interface Failure<I> {
+        void failed(I item, Exception error);
+    }
+
+    /**
+     * A prepared item in the queue; <code>null</code> marks the end of the items.
+     */
+    private record Queued<I, P>(I item, P prepared, long enqueued) {
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore renderPermits;
+    private final int senderCount;
+    private final int queueSize;
+    private final Timer renderTimer;
+    private final Timer sendTimer;
+    private final Timer waitTimer;
+    private final AtomicReference<BlockingQueue<?>> currentQueue = new AtomicReference<>();
+
+    /**
+     * @param executor    runs both stages, one task per item to render and one per sender (e.g. a virtual thread per
+     *                    task); it must not limit the number of tasks running at once
+     * @param renderCount the concurrency of the render stage
+     * @param senderCount the concurrency of the send stage
+     * @param queueSize   the capacity of the queue between both stages
+     */
+    RenderSendPipeline(ExecutorService executor, int renderCount, int senderCount, int queueSize, MeterRegistry registry) {
+        this.executor = executor;
+        this.renderPermits = new Semaphore(renderCount);
+        this.senderCount = senderCount;
+        this.queueSize = queueSize;
+        this.renderTimer = stageTimer("render", registry);
+        this.sendTimer = stageTimer("send", registry);
+        this.waitTimer = Timer.builder("mailing.pipeline.queue.wait").description("Time a prepared item waited for a sender").register(registry);
+        registry.gauge("mailing.pipeline.queue.depth", currentQueue, current -> {
+            final var queue = current.get();
+            return queue != null ? queue.size() : 0.0;
+        });
+    }
+
+    private static Timer stageTimer(String stage, MeterRegistry registry) {
+        return Timer.builder("mailing.pipeline.stage").description("Time an item spent in a stage").tag("stage", stage).register(registry);
+    }
+
+    /**
+     * Runs all items through the pipeline and waits until every one has been sent or has failed. Failures are logged,
+     * reported to <code>failure</code> and only affect the item at hand.
+     *
+     * @return the items sent successfully
+     */
+    List<I> run(List<I> items, RenderStage<I, P> render, SendStage<I, P> send, Release<P> release, Failure<I> failure) {
+        final BlockingQueue<Optional<Queued<I, P>>> queue = new ArrayBlockingQueue<>(queueSize);
+        final List<I> sent = Collections.synchronizedList(new ArrayList<>(items.size()));
+        final var context = Context.current();
+        currentQueue.set(queue);
+        try {
+            final List<CompletableFuture<Void>> sending = new ArrayList<>(senderCount);
+            for (int loop = 0; loop < senderCount; ++loop) {
+                sending.add(CompletableFuture.runAsync(context.wrap(() -> consume(queue, send, release, failure, sent)), executor));
+            }
+
+            final var rendering = items.stream()
+                    .map(item -> CompletableFuture.runAsync(context.wrap(() -> produce(item, queue, render, release, failure)), executor))
+                    .toList();
+            CompletableFuture.allOf(rendering.toArray(CompletableFuture[]::new)).join();
+            for (int loop = 0; loop < senderCount; ++loop) {
+                enqueue(queue, Optional.empty());
+            }
+            CompletableFuture.allOf(sending.toArray(CompletableFuture[]::new)).join();
+        } finally {
+            currentQueue.set(null);
+            // NB: only left over if the run was aborted
+            queue.forEach(queued -> queued.ifPresent(q -> release.release(q.prepared())));
+        }
+        return List.copyOf(sent);
+    }
+
+    private void produce(I item, BlockingQueue<Optional<Queued<I, P>>> queue, RenderStage<I, P> render, Release<P> release, Failure<I> failure) {
+        try {
+            renderPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // NB: the permit is held until the item is enqueued, so renders cannot run ahead of sending
+        try {
+            final P prepared;
+            final long started = System.nanoTime();
+            try {
+                prepared = render.render(item);
+            } catch (IOException | RuntimeException e) {
+                Log.warnf(e, "Could not prepare %s.", item);
+                report(failure, item, e);
+                return;
+            } finally {
+                renderTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+
+            if (!enqueue(queue, Optional.of(new Queued<>(item, prepared, System.nanoTime())))) {
+                release.release(prepared);
+            }
+        } finally {
+            renderPermits.release();
+        }
+    }
+
+    private void consume(BlockingQueue<Optional<Queued<I, P>>> queue, SendStage<I, P> send, Release<P> release, Failure<I> failure, List<I> sent) {
+        while (true) {
+            final Optional<Queued<I, P>> next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (next.isEmpty()) {
+                return;
+            }
+
+            final var queued = next.get();
+            final long started = System.nanoTime();
+            waitTimer.record(started - queued.enqueued(), TimeUnit.NANOSECONDS);
+            try {
+                send.send(queued.item(), queued.prepared());
+                sent.add(queued.item());
+            } catch (IOException | RuntimeException e) {
+                Log.warnf(e, "Could not send %s.", queued.item());
+                report(failure, queued.item(), e);
+            } finally {
+                sendTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                release.release(queued.prepared());
+            }
+        }
+    }
+
+    private static <I> void report(Failure<I> failure, I item, Exception error) {
+        try {
+            failure.failed(item, error);
+        } catch (RuntimeException e) {
+            Log.warnf(e, "Could not report the failure of %s.", item);
+        }
+    }
+
+    /**
+     * Blocks while the queue is full, which is the backpressure on the render stage.
+     *
+     * @return whether the element was enqueued; <code>false</code> if interrupted
+     */
+    private static <T> boolean enqueue(BlockingQueue<T> queue, T element) {
+        try {
+            queue.put(element);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
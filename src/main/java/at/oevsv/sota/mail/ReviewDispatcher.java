@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.mail;
+
+import at.oevsv.sota.data.persistence.DiplomaRequestsCreated;
+import io.quarkus.logging.Log;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.faulttolerance.exceptions.BulkheadException;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends review mails as soon as new requests have been committed instead of waiting for the next sweep of
+ * {@link MailingResource#sendPendingRequests()}. Bursts of requests are coalesced into a single run. If a run is in
+ * progress already (e.g. the sweep), the dispatch is retried every <code>retryDelay</code> until it gets through, so
+ * requests committed meanwhile do not wait for the next sweep; requests missed otherwise (e.g. because the run failed)
+ * are picked up by the sweep.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+class ReviewDispatcher {
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(10L);
+
+    private final MailingResource mailing;
+    private final boolean enabled;
+    private final Duration retryDelay;
+    // NB: the run mostly waits for renders and the mail server
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("mailing-trigger").factory());
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    @Inject
+    ReviewDispatcher(MailingResource mailing, MailingConfiguration configuration) {
+        this(mailing, configuration, RETRY_DELAY);
+    }
+
+    @VisibleForTesting
+    ReviewDispatcher(MailingResource mailing, MailingConfiguration configuration, Duration retryDelay) {
+        this.mailing = mailing;
+        this.enabled = configuration.dispatchOnCreate();
+        this.retryDelay = retryDelay;
+    }
+
+    void onRequestsCreated(@Observes(during = TransactionPhase.AFTER_SUCCESS) DiplomaRequestsCreated event) {
+        // NB: a run that has not started yet will see these requests as well
+        if (enabled && scheduled.compareAndSet(false, true)) {
+            executor.execute(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        scheduled.set(false);
+        try {
+            mailing.sendPendingRequests();
+        } catch (BulkheadException e) {
+            // NB: the bulkhead does not queue synchronous callers, so wait for the run in progress to finish
+            if (scheduled.compareAndSet(false, true)) {
+                Log.debugf("Review mails are being sent already; trying again in %s.", retryDelay);
+                executor.schedule(this::dispatch, retryDelay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException e) {
+            Log.warn("Could not send review mails for new requests; leaving them to the next run.", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
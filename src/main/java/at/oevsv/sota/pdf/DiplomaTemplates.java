@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.Candidate;
+import at.oevsv.sota.data.api.Generation;
+import at.oevsv.sota.data.api.RenderProfile;
+import at.oevsv.sota.pdf.RenderTrace.Phase;
+import com.lowagie.text.Document;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.RectangleReadOnly;
+import com.lowagie.text.pdf.PdfWriter;
+import io.quarkus.cache.CacheKey;
+import io.quarkus.cache.CacheResult;
+import io.quarkus.logging.Log;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Pre-renders the parts of a diploma that are shared by all diplomas of the same kind (background, title, static
+ * localized text, ...) into a one-page PDF. Actual diplomas are created by stamping the variable fields onto a copy of
+ * the template.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+public class DiplomaTemplates {
+
+    private static final int EXPECTED_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Identifies a template; everything that influences the static parts of a diploma must be part of the key.
+     *
+     * @param generator the {@link DiplomaGenerator} (by class name) that renders the template
+     * @param category  the category of the diploma
+     * @param rank      the rank of the diploma
+     * @param locale    the language of the static text
+     * @param profile   the profile determining the resolution and JPEG quality of the background
+     */
+    public record Key(String generator, Candidate.Category category, Candidate.Rank rank, Locale locale, RenderProfile profile) {
+
+        @Nonnull
+        public static Key of(Generation generation, DiplomaGenerator format) {
+            final var candidate = generation.getCandidate();
+            return new Key(format.getClass().getName(), candidate.category(), candidate.rank(), generation.getLocale(), generation.getProfile());
+        }
+    }
+
+    /**
+     * @return whether the template for <code>generation</code> may be cached, i.e. whether it uses the JPEG quality
+     * of its profile; explicit qualities are rare, and caching them would add a multi-megabyte template per value
+     */
+    public static boolean isCacheable(Generation generation) {
+        return Float.compare(generation.getQuality(), generation.getProfile().getQuality()) == 0;
+    }
+
+    /**
+     * Returns the pre-rendered template page for the given key. The returned array is shared and must not be modified.
+     *
+     * @param key        the key identifying the template
+     * @param generation a generation matching <code>key</code> that is {@link #isCacheable(Generation) cacheable}; used
+     *                   to render the template if it is not cached yet
+     * @param format     the format matching <code>key</code>
+     * @return a PDF containing exactly one page
+     * @throws IOException if the template cannot be rendered
+     */
+    @CacheResult(cacheName = "diploma-template-cache")
+    public byte[] templateFor(@CacheKey Key key, Generation generation, DiplomaGenerator format) throws IOException {
+        Log.infof("Rendering diploma template %s", key);
+        return renderTemplate(generation, format);
+    }
+
+    @Nonnull
+    static byte[] renderTemplate(Generation generation, DiplomaGenerator format) throws IOException {
+        try (final var trace = RenderTrace.begin(Phase.TEMPLATE, generation, format);
+             final var os = new ByteArrayOutputStream(EXPECTED_SIZE)) {
+            try {
+                // NB: the background is rendered when the page ends, i.e. when the document is closed
+                try (final Document document = new Document()) {
+                    document.setDocumentLanguage(generation.getLocale().getLanguage());
+
+                    final Rectangle pageSize = highResA4Landscape();
+                    document.setPageSize(pageSize);
+                    document.setMargins(0, 0, 0, 0);
+                    document.setPageCount(1);
+                    final var writer = PdfWriter.getInstance(document, new InterruptibleOutputStream(os));
+                    writer.setPageEvent(new PdfBackgroundSetter(format.createImageRenderer(generation), generation.getQuality()));
+                    document.open();
+
+                    RenderTrace.run(Phase.LAYOUT, () -> format.createTextRenderer(generation).writeTemplateText(writer.getDirectContent(), pageSize));
+                    PdfRenderingService.checkCancelled();
+                }
+            } catch (IOException | RuntimeException e) {
+                trace.fail(e);
+                throw e;
+            }
+
+            // NB: the document must be closed so the stream is properly finalized
+            return os.toByteArray();
+        }
+    }
+
+    /**
+     * Takes care of the fact that OpenPDF expects the page size in millimeters in 1/72 inches.
+     *
+     * @return a {@link Rectangle} with the proper dimensions
+     */
+    @Nonnull
+    private static Rectangle highResA4Landscape() {
+        float width = PdfUtils.millimetersToUserSpace(297.0f);
+        float height = PdfUtils.millimetersToUserSpace(210.0f);
+        return new RectangleReadOnly(width, height);
+    }
+}
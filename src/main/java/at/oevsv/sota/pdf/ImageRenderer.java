@@ -16,10 +16,41 @@
 
 package at.oevsv.sota.pdf;
 
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfContentByte;
+
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 public interface ImageRenderer {
 
+    /**
+     * Renders the complete image layer, including all elements that differ from diploma to diploma.
+     *
+     * @param target the graphics to draw into
+     * @throws IOException if a required image cannot be loaded
+     */
     void render(Graphics2D target) throws IOException;
+
+    /**
+     * Composes only the image elements that are shared by all diplomas with the same template (see
+     * {@link DiplomaTemplates}) into a raster. The raster is encoded into the PDF as it is, so it should be of the
+     * resolution and color model the diploma needs, and nothing more.
+     *
+     * @return the composed raster
+     * @throws IOException if a required image cannot be loaded
+     */
+    BufferedImage renderTemplate() throws IOException;
+
+    /**
+     * Stamps the variable image elements onto a pre-rendered template page.
+     *
+     * @param canvas   the content to draw onto
+     * @param pageSize the size of the template page
+     * @throws IOException if a required image cannot be loaded
+     */
+    default void stamp(PdfContentByte canvas, Rectangle pageSize) throws IOException {
+        // Nothing variable to stamp by default.
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Fails writes once the render writing has been cancelled (see {@link PdfRenderingService#checkCancelled()}), so that a
+ * cancelled render neither keeps its slot nor keeps writing into a target its caller has given up on.
+ *
+ * @author schwingenschloegl
+ */
+final class InterruptibleOutputStream extends FilterOutputStream {
+
+    InterruptibleOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        PdfRenderingService.checkCancelled();
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        PdfRenderingService.checkCancelled();
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        PdfRenderingService.checkCancelled();
+        out.flush();
+    }
+
+    /**
+     * Does not close the target, as the callers writing through this stream do not own it.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -16,21 +16,32 @@
 
 package at.oevsv.sota.pdf;
 
+import at.oevsv.sota.pdf.RenderTrace.Phase;
 import com.lowagie.text.Document;
-import com.lowagie.text.pdf.PdfGraphics2D;
+import com.lowagie.text.Image;
 import com.lowagie.text.pdf.PdfPageEventHelper;
 import com.lowagie.text.pdf.PdfWriter;
 import io.quarkus.logging.Log;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 /**
- * PDF page event listener that adds the proper background image to the page once it's finished.
+ * PDF page event listener that adds the proper background image to the page once it's finished. Only the template
+ * part of the image layer is rendered (see {@link ImageRenderer#renderTemplate()}). The raster is encoded as JPEG and
+ * embedded directly, instead of drawing it via {@link com.lowagie.text.pdf.PdfGraphics2D}, which would copy it first.
  *
  * @author schwingenschloegl
  */
 final class PdfBackgroundSetter extends PdfPageEventHelper {
 
+    /**
+     * The artwork compresses to about two bits per pixel at print quality; less at lower qualities.
+     */
+    private static final int PIXELS_PER_BYTE = 4;
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+
     private final float quality;
     private final ImageRenderer renderer;
 
@@ -44,15 +55,25 @@ final class PdfBackgroundSetter extends PdfPageEventHelper {
     public void onEndPage(PdfWriter writer, Document document) {
         try {
             final var pageSize = document.getPageSize();
-            final var graphics2D = new PdfGraphics2D(writer.getDirectContentUnder(), pageSize.getWidth(), pageSize.getHeight(), null, false, true, quality);
-            try {
-                renderer.render(graphics2D);
-            } finally {
-                graphics2D.dispose();
-            }
+            final var background = RenderTrace.phase(Phase.COMPOSE, renderer::renderTemplate);
+            // NB: sized from the raster, so a preview does not reserve as much as a print and a print does not grow the buffer
+            final var jpeg = new ByteArrayOutputStream(expectedSize(background));
+            RenderTrace.run(Phase.ENCODE, () -> Rasters.writeJpeg(background, quality, jpeg));
+
+            RenderTrace.run(Phase.EMBED, () -> {
+                final var image = Image.getInstance(jpeg.toByteArray());
+                image.scaleAbsolute(pageSize.getWidth(), pageSize.getHeight());
+                image.setAbsolutePosition(0.0f, 0.0f);
+                writer.getDirectContentUnder().addImage(image);
+            });
         } catch (IOException e) {
             Log.warn("Could not set background image.", e);
             throw new RuntimeException("Could not set background image.", e);
         }
     }
+
+    static int expectedSize(BufferedImage raster) {
+        final long pixels = (long) raster.getWidth() * raster.getHeight();
+        return (int) Math.min(Integer.MAX_VALUE - 8L, Math.max(MIN_BUFFER_SIZE, pixels / PIXELS_PER_BYTE));
+    }
 }
@@ -17,55 +17,172 @@
 package at.oevsv.sota.pdf;
 
 import at.oevsv.sota.data.api.Generation;
+import at.oevsv.sota.data.persistence.DiplomaLog;
+import at.oevsv.sota.data.persistence.DiplomaLogResource;
+import at.oevsv.sota.pdf.RenderTrace.Phase;
 import at.oevsv.sota.pdf.diploma.DiplomaFormats;
 import com.google.common.annotations.VisibleForTesting;
-import com.lowagie.text.Document;
-import com.lowagie.text.Rectangle;
-import com.lowagie.text.RectangleReadOnly;
-import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfStamper;
 import io.quarkus.logging.Log;
-import io.smallrye.common.annotation.Blocking;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import javax.annotation.Nonnull;
-import java.io.ByteArrayOutputStream;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 @Path("/api/diploma/pdf")
 public class PdfGenerationResource {
 
-    private static final int EXPECTED_SIZE = 4 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     private final DiplomaFormats diplomaFormats;
+    private final DiplomaTemplates templates;
+    private final PdfRenderingService rendering;
+    private final RenderedDiplomaStore store;
+    private final DiplomaLogResource diplomaLog;
 
     @Inject
-    public PdfGenerationResource(DiplomaFormats diplomaFormats) {
+    public PdfGenerationResource(DiplomaFormats diplomaFormats, DiplomaTemplates templates, PdfRenderingService rendering,
+                                 RenderedDiplomaStore store, DiplomaLogResource diplomaLog) {
         this.diplomaFormats = Objects.requireNonNull(diplomaFormats);
+        this.templates = Objects.requireNonNull(templates);
+        this.rendering = Objects.requireNonNull(rendering);
+        this.store = Objects.requireNonNull(store);
+        this.diplomaLog = Objects.requireNonNull(diplomaLog);
     }
 
+    /**
+     * Generates the PDF and streams it directly into the response; the diploma is never held in memory as a whole.
+     * The format is resolved up front, so that errors are reported before the response is committed. Diplomas that
+     * have been rendered before are served from the {@link RenderedDiplomaStore}. Rendering happens on the
+     * {@link PdfRenderingService}; if it is saturated, the request is rejected with 503.
+     */
     @POST
     @Path("/generate")
     @RolesAllowed("admin")
-    @Blocking
+    @RunOnVirtualThread
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces("application/pdf")
     public Response generatePdf(Generation generation) throws IOException {
-        String fileName = fileNameFor(generation);
-        byte[] bytes = generatePdfBytes(generation, fileName);
+        final String fileName = fileNameFor(generation);
+        final DiplomaGenerator format = formatFor(generation);
+        final String key = store.keyFor(generation, format);
+
+        final StreamingOutput output = os -> {
+            if (store.copyTo(key, os)) {
+                Log.infof("Served stored diploma %s", fileName);
+                return;
+            }
 
-        return Response.ok(bytes, "application/pdf")
+            Log.infof("Generating diploma %s", fileName);
+            try {
+                if (key == null) {
+                    rendering.render(() -> {
+                        stamp(generation, format, templateFor(generation, format), os);
+                        return null;
+                    });
+                } else {
+                    final File file = rendering.render(() -> renderToStore(generation, format, key), PdfGenerationResource::deleteQuietly);
+                    try {
+                        Files.copy(file.toPath(), os);
+                    } finally {
+                        Files.deleteIfExists(file.toPath());
+                    }
+                }
+            } catch (RenderingCapacityExceededException e) {
+                throw serviceUnavailable(e);
+            }
+            Log.infof("Generated diploma %s", fileName);
+        };
+        return Response.ok(output, "application/pdf")
                 .header("Content-Disposition", "attachment;filename=" + fileName)
                 .build();
     }
 
+    /**
+     * Generates several diplomas in parallel and streams them as ZIP archive; every entry is written as soon as it is
+     * rendered, named according to {@link DiplomaGenerator#fileNameFor(Generation)}. Diplomas that fail to render are
+     * listed in an error manifest within the archive.
+     */
+    @POST
+    @Path("/generate/batch")
+    @RolesAllowed("admin")
+    @RunOnVirtualThread
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces("application/zip")
+    public Response generateBatch(List<Generation> generations) throws IOException {
+        if (generations == null || generations.isEmpty()) {
+            throw new BadRequestException("No generations given.");
+        }
+
+        final List<ZipBatchWriter.Entry> entries = new ArrayList<>(generations.size());
+        for (final var generation : generations) {
+            final DiplomaGenerator format = formatFor(generation);
+            final String key = store.keyFor(generation, format);
+            entries.add(new ZipBatchWriter.Entry(format.fileNameFor(generation), () -> {
+                final File stored = store.copyOf(key);
+                return stored != null ? stored : renderToStore(generation, format, key);
+            }));
+        }
+
+        final StreamingOutput output = os -> {
+            Log.infof("Generating %d diplomas as batch", entries.size());
+            try {
+                new ZipBatchWriter(rendering, rendering.slots(), rendering.timeout()).write(entries, os);
+            } catch (RenderingCapacityExceededException e) {
+                throw serviceUnavailable(e);
+            }
+            Log.infof("Generated %d diplomas as batch", entries.size());
+        };
+        return Response.ok(output, "application/zip")
+                .header("Content-Disposition", "attachment;filename=diplomas.zip")
+                .build();
+    }
+
+    /**
+     * Like {@link #generateBatch(List)}, but for already requested diplomas identified by their {@link DiplomaLog} ID.
+     */
+    @POST
+    @Path("/generate/batch/logs")
+    @RolesAllowed("admin")
+    @RunOnVirtualThread
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces("application/zip")
+    public Response generateBatchForLogs(Set<Long> ids) throws IOException {
+        if (ids == null || ids.isEmpty()) {
+            throw new BadRequestException("No IDs given.");
+        }
+
+        final var logs = diplomaLog.findAllInternal(ids);
+        if (logs.size() != ids.size()) {
+            throw new NotFoundException("Not all diploma logs found.");
+        }
+
+        return generateBatch(logs.stream().map(DiplomaLogResource::toGeneration).toList());
+    }
+
     public String fileNameFor(Generation generation) {
         DiplomaGenerator format = diplomaFormats.generationStrategyFor(generation);
         if (format != null) {
@@ -75,56 +192,120 @@ public class PdfGenerationResource {
         throw new IllegalStateException(String.format("No format found for generation %s", generation));
     }
 
-    public byte[] generatePdfBytes(Generation generation, String fileName) throws IOException {
-        return generateBinaryAsBytes(generation, fileName);
+    /**
+     * Generates the PDF into a temporary file. This is meant for internal callers (e.g. mailing) that need the
+     * diploma after generation; spilling to disk avoids holding a multi-megabyte array per concurrent generation.
+     *
+     * @param generation the parameters of the diploma
+     * @param fileName   the file name (for logging purposes only)
+     * @return a temporary file; the caller is responsible for deleting it
+     * @throws RenderingCapacityExceededException if the {@link PdfRenderingService} is saturated
+     * @throws IOException                        if the diploma could not be generated
+     */
+    @Nonnull
+    public File generatePdfFile(Generation generation, String fileName) throws IOException {
+        final DiplomaGenerator format = formatFor(generation);
+        final String key = store.keyFor(generation, format);
+        final File stored = store.copyOf(key);
+        if (stored != null) {
+            Log.infof("Served stored diploma %s", fileName);
+            return stored;
+        }
+
+        Log.infof("Generating diploma %s", fileName);
+        final File file = rendering.render(() -> renderToStore(generation, format, key), PdfGenerationResource::deleteQuietly);
+
+        Log.infof("Generated diploma %s (%d bytes)", fileName, file.length());
+        return file;
+    }
+
+    @Nonnull
+    private File renderToStore(Generation generation, DiplomaGenerator format, @Nullable String key) throws IOException {
+        final File file = renderToFile(generation, format);
+        try {
+            PdfRenderingService.checkCancelled();
+            store.save(key, file);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        return file;
     }
 
     @Nonnull
-    private byte[] generateBinaryAsBytes(Generation generation, String fileName) throws IOException {
-        Log.infof("Generating diploma %s", fileName);
-        DiplomaGenerator format = diplomaFormats.generationStrategyFor(generation);
-        if (format != null) {
-            byte[] bytes = generateBinary(generation, format);
-            Log.infof("Generated diploma %s (%d bytes)", fileName, bytes.length);
+    private File renderToFile(Generation generation, DiplomaGenerator format) throws IOException {
+        final var file = Files.createTempFile("diploma-", ".pdf");
+        try (final var os = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE)) {
+            stamp(generation, format, templateFor(generation, format), os);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file.toFile();
+    }
 
-            return bytes;
-        } else {
-            throw new IOException(String.format("No format found for generation %s", generation));
+    private static void deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            Log.warnf(e, "Could not delete temporary file %s", file);
         }
     }
 
-    @VisibleForTesting
-    static byte[] generateBinary(Generation generation, DiplomaGenerator format) throws IOException {
-        try (final var os = new ByteArrayOutputStream(EXPECTED_SIZE)) {
-            try (final Document document = new Document()) {
-                document.setDocumentLanguage(generation.getLocale().getLanguage());
-
-                final Rectangle pageSize = highResA4Landscape();
-                document.setPageSize(pageSize);
-                document.setMargins(0, 0, 0, 0);
-                document.setPageCount(1);
-                final var writer = PdfWriter.getInstance(document, os);
-                writer.setPageEvent(new PdfBackgroundSetter(format.createImageRenderer(generation), generation.getQuality()));
-                document.open();
-
-                final var textRenderer = format.createTextRenderer(generation);
-                textRenderer.writeText(writer);
-            }
+    @Nonnull
+    private static WebApplicationException serviceUnavailable(RenderingCapacityExceededException e) {
+        return new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, e.getRetryAfter().toSeconds())
+                .build());
+    }
 
-            // NB: the document must be closed so the stream is properly finalized
-            return os.toByteArray();
+    @Nonnull
+    private DiplomaGenerator formatFor(Generation generation) throws IOException {
+        DiplomaGenerator format = diplomaFormats.generationStrategyFor(generation);
+        if (format == null) {
+            throw new IOException(String.format("No format found for generation %s", generation));
         }
+        return format;
+    }
+
+    @Nonnull
+    private byte[] templateFor(Generation generation, DiplomaGenerator format) throws IOException {
+        if (!DiplomaTemplates.isCacheable(generation)) {
+            return DiplomaTemplates.renderTemplate(generation, format);
+        }
+        return templates.templateFor(DiplomaTemplates.Key.of(generation, format), generation, format);
     }
 
     /**
-     * Takes care of the fact that OpenPDF expects the page size in millimeters in 1/72 inches.
+     * Stamps the variable fields of the diploma onto a copy of the pre-rendered template.
      *
-     * @return a {@link Rectangle} with the proper dimensions
+     * @param generation the parameters of the diploma
+     * @param format     the format to use
+     * @param template   the template as rendered by {@link DiplomaTemplates}
+     * @param os         the target to write the complete diploma to; it is not closed
+     * @throws IOException if stamping fails or the render has been cancelled (see {@link PdfRenderingService})
      */
-    @Nonnull
-    private static Rectangle highResA4Landscape() {
-        float width = PdfUtils.millimetersToUserSpace(297.0f);
-        float height = PdfUtils.millimetersToUserSpace(210.0f);
-        return new RectangleReadOnly(width, height);
+    @VisibleForTesting
+    static void stamp(Generation generation, DiplomaGenerator format, byte[] template, OutputStream os) throws IOException {
+        try (final var trace = RenderTrace.begin(Phase.STAMP, generation, format)) {
+            final var reader = new PdfReader(template);
+            try {
+                final var stamper = new PdfStamper(reader, new InterruptibleOutputStream(os));
+                stamper.getWriter().setCloseStream(false);
+                final var pageSize = reader.getPageSize(1);
+                final var canvas = stamper.getOverContent(1);
+                RenderTrace.run(Phase.EMBED, () -> format.createImageRenderer(generation).stamp(canvas, pageSize));
+                PdfRenderingService.checkCancelled();
+                RenderTrace.run(Phase.LAYOUT, () -> format.createTextRenderer(generation).stampText(canvas, pageSize));
+                PdfRenderingService.checkCancelled();
+                // NB: the stamper must be closed so the stream is properly finalized
+                RenderTrace.run(Phase.FINISH, stamper::close);
+            } catch (IOException | RuntimeException e) {
+                trace.fail(e);
+                throw e;
+            } finally {
+                reader.close();
+            }
+        }
     }
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.context.Context;
+import io.quarkus.logging.Log;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs PDF renders on a dedicated pool with a fixed number of slots and a bounded wait queue. Requests exceeding the
+ * queue are rejected right away instead of piling up raster buffers on the heap.
+ * <p>
+ * Cancelling a render interrupts the thread running it; renders check for that between their phases and whenever
+ * they write (see {@link #checkCancelled()} and {@link InterruptibleOutputStream}), so a slot is freed soon after.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+public class PdfRenderingService {
+
+    /**
+     * A unit of rendering work.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface RenderTask<T> {
+        T render() throws IOException;
+    }
+
+    /**
+     * The pending result of a render; cancelling it interrupts the render.
+     */
+    private static final class PendingRender<T> extends CompletableFuture<T> {
+
+        private volatile Future<?> task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            final var running = task;
+            if (running != null) {
+                running.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+
+        void runningAs(Future<?> task) {
+            this.task = task;
+            // NB: it might have been cancelled before the task was known
+            if (isCancelled()) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private final RenderingConfiguration configuration;
+    private final ThreadPoolExecutor executor;
+    private final Timer waitTimer;
+    private final Timer renderTimer;
+    private final Counter rejectedCounter;
+
+    @Inject
+    public PdfRenderingService(RenderingConfiguration configuration, MeterRegistry registry) {
+        this.configuration = configuration;
+        this.executor = new ThreadPoolExecutor(configuration.slots(), configuration.slots(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(configuration.queueSize()),
+                new ThreadFactoryBuilder().setNameFormat("pdf-rendering-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        registry.gauge("pdf.rendering.queue.depth", executor, e -> e.getQueue().size());
+        registry.gauge("pdf.rendering.active", executor, ThreadPoolExecutor::getActiveCount);
+        this.waitTimer = Timer.builder("pdf.rendering.wait").description("Time a render waited for a free slot").register(registry);
+        this.renderTimer = Timer.builder("pdf.rendering.duration").description("Time a render occupied a slot").register(registry);
+        this.rejectedCounter = Counter.builder("pdf.rendering.rejected").description("Renders rejected due to saturation").register(registry);
+    }
+
+    /**
+     * @return the number of renders that may run concurrently
+     */
+    public int slots() {
+        return configuration.slots();
+    }
+
+    /**
+     * @return how long to wait for a single render
+     */
+    public Duration timeout() {
+        return configuration.timeout();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Submits a render without waiting for its completion.
+     *
+     * @param task the render to perform
+     * @return the pending result
+     * @throws RenderingCapacityExceededException if all slots are busy and the wait queue is full
+     */
+    public <T> CompletableFuture<T> submit(RenderTask<T> task) throws RenderingCapacityExceededException {
+        return submit(task, null);
+    }
+
+    /**
+     * Submits a render without waiting for its completion.
+     *
+     * @param task    the render to perform
+     * @param discard releases the result of a render that completes after it has been cancelled, e.g. deletes a file
+     * @return the pending result; cancelling it interrupts the render
+     * @throws RenderingCapacityExceededException if all slots are busy and the wait queue is full
+     */
+    public <T> CompletableFuture<T> submit(RenderTask<T> task, @Nullable Consumer<? super T> discard) throws RenderingCapacityExceededException {
+        final long submitted = System.nanoTime();
+        final var pending = new PendingRender<T>();
+        try {
+            // NB: the render continues the trace of the submitting thread
+            pending.runningAs(executor.submit(Context.current().wrap(() -> {
+                if (pending.isDone()) {
+                    return;
+                }
+
+                final long started = System.nanoTime();
+                waitTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+                final T result;
+                try {
+                    result = task.render();
+                } catch (IOException e) {
+                    pending.completeExceptionally(new UncheckedIOException(e));
+                    return;
+                } catch (RuntimeException | Error e) {
+                    pending.completeExceptionally(e);
+                    return;
+                } finally {
+                    renderTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+                if (!pending.complete(result) && discard != null && result != null) {
+                    discard.accept(result);
+                }
+            })));
+            return pending;
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            Log.warnf("Rejecting render; %d renders active, %d waiting.", executor.getActiveCount(), executor.getQueue().size());
+            throw new RenderingCapacityExceededException(configuration.retryAfter());
+        }
+    }
+
+    /**
+     * Performs a render on the rendering pool and waits for its completion.
+     *
+     * @param task the render to perform
+     * @return the result of the render
+     * @throws RenderingCapacityExceededException if all slots are busy and the wait queue is full
+     * @throws IOException                        if the render fails or does not complete in time
+     */
+    public <T> T render(RenderTask<T> task) throws IOException {
+        return render(task, null);
+    }
+
+    /**
+     * Performs a render on the rendering pool and waits for its completion. If it does not complete in time, it is
+     * cancelled.
+     *
+     * @param task    the render to perform
+     * @param discard releases the result of a render that completes after it has been cancelled, e.g. deletes a file
+     * @return the result of the render
+     * @throws RenderingCapacityExceededException if all slots are busy and the wait queue is full
+     * @throws IOException                        if the render fails or does not complete in time
+     */
+    public <T> T render(RenderTask<T> task, @Nullable Consumer<? super T> discard) throws IOException {
+        final var future = submit(task, discard);
+        try {
+            return future.get(configuration.timeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new InterruptedIOException("Interrupted while waiting for render.");
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("Render did not complete in time.", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * Lets a render give up once it has been cancelled; to be called between its phases.
+     *
+     * @throws InterruptedIOException if the render has been cancelled
+     */
+    public static void checkCancelled() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Render cancelled.");
+        }
+    }
+
+    /**
+     * Unwraps the failure of a render as submitted via {@link #submit(RenderTask)}.
+     */
+    public static IOException unwrap(Throwable failure) {
+        if (failure instanceof CompletionException completion && completion.getCause() != null) {
+            return unwrap(completion.getCause());
+        }
+        if (failure instanceof UncheckedIOException unchecked) {
+            return unchecked.getCause();
+        }
+        if (failure instanceof IOException io) {
+            return io;
+        }
+        if (failure instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        return new IOException(failure);
+    }
+}
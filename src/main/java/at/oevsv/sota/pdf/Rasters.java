@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import javax.annotation.Nonnull;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Helpers for raster images. The artwork of a diploma is 3508 x 2480 px (A4 at 300 dpi), so every full-size copy costs
+ * 26-35 MB; these helpers are written to avoid such copies.
+ *
+ * @author schwingenschloegl
+ */
+public final class Rasters {
+
+    private static final double EPSILON = 1.0e-6;
+
+    private Rasters() {
+        throw new AssertionError();
+    }
+
+    /**
+     * A decoded artwork, possibly at a reduced resolution.
+     *
+     * @param image  the decoded image
+     * @param width  the width of the artwork in its original resolution
+     * @param height the height of the artwork in its original resolution
+     */
+    public record Artwork(BufferedImage image, int width, int height) {
+
+        /**
+         * Creates graphics to draw onto the image; coordinates are given in pixels of the original resolution.
+         *
+         * @return graphics to be disposed by the caller
+         */
+        public Graphics2D createGraphics() {
+            final var graphics = image.createGraphics();
+            prepare(graphics);
+            graphics.scale(image.getWidth() / (double) width, image.getHeight() / (double) height);
+            return graphics;
+        }
+    }
+
+    /**
+     * Decodes an image at the given scale. Whole factors are applied while decoding (by subsampling), so the image is
+     * never held in its original resolution unless necessary. The color model is the one of the encoded image, so no
+     * conversion takes place either.
+     *
+     * @param is    the encoded image; it is not closed
+     * @param scale the factor to scale by; any value of 1 or above decodes the image as it is
+     * @return the decoded image
+     * @throws IOException if the image cannot be decoded
+     */
+    public static Artwork read(InputStream is, double scale) throws IOException {
+        return RenderTrace.phase(RenderTrace.Phase.DECODE, () -> decode(is, scale));
+    }
+
+    @Nonnull
+    private static Artwork decode(InputStream is, double scale) throws IOException {
+        try (final var iis = new MemoryCacheImageInputStream(is)) {
+            final var readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format.");
+            }
+
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+
+                final int subsampling = scale < 1.0 ? Math.max(1, (int) Math.floor(1.0 / scale + EPSILON)) : 1;
+                final var param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                final var image = reader.read(0, param);
+
+                return new Artwork(scaled(image, scale * subsampling), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales the image down by the given factor.
+     *
+     * @param source the image
+     * @param scale  the factor; any value of 1 or above leaves the image as it is
+     * @return the scaled image, or <code>source</code> itself if no scaling is necessary
+     */
+    public static BufferedImage scaled(BufferedImage source, double scale) {
+        if (scale >= 1.0 - EPSILON) {
+            return source;
+        }
+
+        final int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        final int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        final var target = new BufferedImage(width, height, source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        final var graphics = target.createGraphics();
+        try {
+            prepare(graphics);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Encodes the image as JPEG. An alpha channel is dropped; for images with interleaved byte samples (as decoded from
+     * PNG), this happens without copying the image.
+     *
+     * @param image   the image
+     * @param quality the JPEG quality between 0 and 1
+     * @param os      the target; it is not closed
+     * @throws IOException if encoding fails
+     */
+    public static void writeJpeg(BufferedImage image, float quality, OutputStream os) throws IOException {
+        final var writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (final var ios = new MemoryCacheImageOutputStream(os)) {
+            final var param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(opaque(image), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * @return a view of the image without its alpha channel, or an opaque copy if no view is possible
+     */
+    private static BufferedImage opaque(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+
+        final var raster = image.getRaster();
+        if (raster.getSampleModel() instanceof PixelInterleavedSampleModel && raster.getTransferType() == DataBuffer.TYPE_BYTE && raster.getNumBands() == 4) {
+            final var colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            // NB: bands are ordered R, G, B, A regardless of the layout in memory
+            final var rgb = raster.createWritableChild(0, 0, raster.getWidth(), raster.getHeight(), 0, 0, new int[]{0, 1, 2});
+            return new BufferedImage(colorModel, rgb, false, null);
+        }
+
+        final var copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        final var graphics = copy.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return copy;
+    }
+
+    /**
+     * Sets up the graphics so that images drawn into it are interpolated smoothly when scaled.
+     */
+    public static void prepare(Graphics2D graphics) {
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a phase of rendering a diploma, see {@link RenderTrace}.
+ *
+ * @author schwingenschloegl
+ */
+@Name(RenderPhaseEvent.NAME)
+@Label("Diploma Render Phase")
+@Description("A phase of rendering a diploma")
+@Category({"SOTA", "PDF"})
+@StackTrace(false)
+final class RenderPhaseEvent extends Event {
+
+    static final String NAME = "at.oevsv.sota.pdf.RenderPhase";
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Generator")
+    String generator;
+
+    @Label("Category")
+    String category;
+
+    @Label("Profile")
+    String profile;
+
+    RenderPhaseEvent(String phase, String generator, String category, String profile) {
+        this.phase = phase;
+        this.generator = generator;
+        this.category = category;
+        this.profile = profile;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.Generation;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+import io.quarkus.logging.Log;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Instruments the phases of rendering a diploma with a span, a timer (<code>pdf.render.phase</code>) and a JFR event
+ * ({@value RenderPhaseEvent#NAME}), each tagged with the generator, category and render profile.
+ * <p>
+ * A trace is bound to the rendering thread from {@link #begin(Phase, Generation, DiplomaGenerator)} until it is
+ * closed; code further down (renderers, fonts, rasters) records its phases via {@link #phase(Phase, PhaseTask)}
+ * without knowing about the diploma. Outside a trace, phases are not recorded. Phases nest, i.e. the time of a phase
+ * includes the time of the phases within.
+ *
+ * @author schwingenschloegl
+ */
+public final class RenderTrace implements AutoCloseable {
+
+    /**
+     * The phases of a render.
+     */
+    public enum Phase {
+        /**
+         * Rendering the template of a diploma kind, see {@link DiplomaTemplates}.
+         */
+        TEMPLATE,
+        /**
+         * Stamping the variable fields onto a copy of the template.
+         */
+        STAMP,
+        /**
+         * Composing the background raster, see {@link ImageRenderer#renderTemplate()}.
+         */
+        COMPOSE,
+        /**
+         * Decoding PNG artwork.
+         */
+        DECODE,
+        /**
+         * Encoding the background raster as JPEG.
+         */
+        ENCODE,
+        /**
+         * Adding images to the PDF.
+         */
+        EMBED,
+        /**
+         * Loading fonts.
+         */
+        FONTS,
+        /**
+         * Laying out text, see {@link TextRenderer}.
+         */
+        LAYOUT,
+        /**
+         * Writing the finished PDF.
+         */
+        FINISH;
+
+        @Nonnull
+        String getLabel() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * A phase of work.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface PhaseTask<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * A phase of work without result.
+     */
+    @FunctionalInterface
+    public interface PhaseAction {
+        void run() throws IOException;
+    }
+
+    private static final String INSTRUMENTATION_SCOPE = "at.oevsv.sota.pdf";
+    private static final ThreadLocal<RenderTrace> CURRENT = new ThreadLocal<>();
+    private static final AtomicBoolean FIRST_RENDERED = new AtomicBoolean();
+
+    private final String generator;
+    private final String category;
+    private final String profile;
+    @Nullable
+    private final RenderTrace previous;
+    private final Recording recording;
+
+    private RenderTrace(Phase phase, String generator, String category, String profile, @Nullable RenderTrace previous) {
+        this.generator = generator;
+        this.category = category;
+        this.profile = profile;
+        this.previous = previous;
+        this.recording = new Recording(this, phase);
+    }
+
+    /**
+     * Starts a trace for the render of a diploma and binds it to the current thread until it is closed.
+     */
+    @Nonnull
+    public static RenderTrace begin(Phase phase, Generation generation, DiplomaGenerator format) {
+        final var trace = new RenderTrace(phase, format.getClass().getSimpleName(), generation.getCandidate().category().name(),
+                generation.getProfile().name(), CURRENT.get());
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Records a phase of the current trace, if any.
+     */
+    public static <T> T phase(Phase phase, PhaseTask<T> task) throws IOException {
+        final var trace = CURRENT.get();
+        if (trace == null) {
+            return task.run();
+        }
+
+        final var recording = new Recording(trace, phase);
+        try {
+            return task.run();
+        } catch (IOException | RuntimeException e) {
+            recording.fail(e);
+            throw e;
+        } finally {
+            recording.end();
+        }
+    }
+
+    /**
+     * Records a phase of the current trace, if any.
+     */
+    public static void run(Phase phase, PhaseAction action) throws IOException {
+        phase(phase, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Marks the render as failed; it is still recorded when the trace is closed.
+     */
+    public void fail(Throwable failure) {
+        recording.fail(failure);
+    }
+
+    @Override
+    public void close() {
+        try {
+            recording.end();
+            if (recording.phase == Phase.STAMP && FIRST_RENDERED.compareAndSet(false, true)) {
+                recordFirstRender();
+            }
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Records the time from process start until the first diploma is finished (<code>pdf.render.first</code>), to
+     * compare cold starts of the JVM and the native image.
+     */
+    private static void recordFirstRender() {
+        final var started = ProcessHandle.current().info().startInstant()
+                .orElseGet(() -> Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()));
+        final long millis = Duration.between(started, Instant.now()).toMillis();
+        Log.infof("First diploma rendered %d ms after process start", millis);
+        TimeGauge.builder("pdf.render.first", () -> millis, TimeUnit.MILLISECONDS)
+                .description("Time from process start until the first diploma was rendered")
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * A phase in progress; the span is current on this thread until the phase ends.
+     */
+    private static final class Recording {
+
+        private final RenderTrace trace;
+        private final Phase phase;
+        private final RenderPhaseEvent event;
+        private final Span span;
+        private final Scope scope;
+        private final long started;
+
+        private Recording(RenderTrace trace, Phase phase) {
+            this.trace = trace;
+            this.phase = phase;
+            this.event = new RenderPhaseEvent(phase.getLabel(), trace.generator, trace.category, trace.profile);
+            this.span = GlobalOpenTelemetry.getTracer(INSTRUMENTATION_SCOPE)
+                    .spanBuilder("pdf " + phase.getLabel())
+                    .setAttribute("diploma.generator", trace.generator)
+                    .setAttribute("diploma.category", trace.category)
+                    .setAttribute("diploma.profile", trace.profile)
+                    .startSpan();
+            this.scope = span.makeCurrent();
+            this.started = System.nanoTime();
+            event.begin();
+        }
+
+        private void fail(Throwable failure) {
+            span.recordException(failure);
+            span.setStatus(StatusCode.ERROR);
+        }
+
+        private void end() {
+            final long duration = System.nanoTime() - started;
+            event.commit();
+            scope.close();
+            span.end();
+            Timer.builder("pdf.render.phase")
+                    .description("Time spent in a phase of rendering a diploma")
+                    .tag("phase", phase.getLabel())
+                    .tag("generator", trace.generator)
+                    .tag("category", trace.category)
+                    .tag("profile", trace.profile)
+                    .register(Metrics.globalRegistry)
+                    .record(duration, TimeUnit.NANOSECONDS);
+        }
+    }
+}
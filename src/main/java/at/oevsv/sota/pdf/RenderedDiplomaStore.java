@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.Generation;
+import at.oevsv.sota.data.domain.jackson.CanonicalJson;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keeps rendered diplomas on disk, addressed by a hash of everything that goes into them, so that the same diploma
+ * (review preview, final copy, retries) is rendered only once. The store is bounded by size; the least recently used
+ * diplomas are evicted first. Entries survive restarts; the build timestamp is part of the key, so a new build does
+ * not serve diplomas rendered from outdated assets.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+public class RenderedDiplomaStore {
+
+    private static final String SUFFIX = ".pdf";
+
+    /**
+     * Everything that influences the rendered diploma; the diploma shows the day of generation, so that is part of it.
+     */
+    @RegisterForReflection
+    record Fingerprint(String generator, String version, String issued, Generation generation) {
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxSize;
+    private final String version;
+
+    /**
+     * Stored diplomas by key in access order (least recently used first), with their size in bytes. Guarded by itself.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    @Inject
+    public RenderedDiplomaStore(RenderedDiplomaStoreConfiguration configuration,
+                                @ConfigProperty(name = "application.build.timestamp") String version,
+                                MeterRegistry registry) {
+        this.directory = configuration.directory().orElseGet(() -> Path.of(System.getProperty("java.io.tmpdir"), "oevsv-sota-diplomas"));
+        this.maxSize = configuration.maxSize().asLongValue();
+        this.version = version;
+
+        registry.gauge("pdf.store.size", this, RenderedDiplomaStore::size);
+        registry.gauge("pdf.store.entries", this, RenderedDiplomaStore::count);
+        this.hitCounter = Counter.builder("pdf.store.hits").description("Diplomas served from the store").register(registry);
+        this.missCounter = Counter.builder("pdf.store.misses").description("Diplomas not found in the store").register(registry);
+        this.evictionCounter = Counter.builder("pdf.store.evictions").description("Diplomas evicted from the store").register(registry);
+        this.enabled = configuration.enabled() && initialize();
+    }
+
+    /**
+     * @return the key of the diploma, or <code>null</code> if the store is disabled
+     */
+    @Nullable
+    public String keyFor(Generation generation, DiplomaGenerator format) {
+        return keyFor(generation, format.getClass().getName());
+    }
+
+    @VisibleForTesting
+    @Nullable
+    String keyFor(Generation generation, String generator) {
+        if (!enabled) {
+            return null;
+        }
+
+        final var canonical = CanonicalJson.calculate(new Fingerprint(generator, version, LocalDate.now().toString(), generation));
+        return canonical != null ? Hashing.sha256().hashString(canonical, StandardCharsets.UTF_8).toString() : null;
+    }
+
+    /**
+     * Writes the stored diploma to the given stream. Nothing is written if the diploma is not stored.
+     *
+     * @param key the key as obtained by {@link #keyFor(Generation, DiplomaGenerator)}
+     * @param os  the target; it is not closed
+     * @return whether the diploma was stored
+     * @throws IOException if writing fails
+     */
+    public boolean copyTo(@Nullable String key, OutputStream os) throws IOException {
+        if (key == null) {
+            return false;
+        }
+
+        final boolean known;
+        synchronized (entries) {
+            known = entries.get(key) != null;
+        }
+        if (known) {
+            final var path = pathOf(key);
+            // NB: once opened, the file stays readable even if it is evicted concurrently
+            try (final var is = Files.newInputStream(path)) {
+                touch(path);
+                is.transferTo(os);
+                hitCounter.increment();
+                return true;
+            } catch (NoSuchFileException e) {
+                forget(key);
+            }
+        }
+        missCounter.increment();
+        return false;
+    }
+
+    /**
+     * Like {@link #copyTo(String, OutputStream)}, but copies the stored diploma into a temporary file.
+     *
+     * @return a temporary file the caller is responsible for deleting, or <code>null</code> if the diploma is not stored
+     */
+    @Nullable
+    public File copyOf(@Nullable String key) throws IOException {
+        if (key == null) {
+            return null;
+        }
+
+        final var file = Files.createTempFile("diploma-", SUFFIX);
+        try (final var os = Files.newOutputStream(file)) {
+            if (copyTo(key, os)) {
+                return file.toFile();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        Files.deleteIfExists(file);
+        return null;
+    }
+
+    /**
+     * Stores a copy of a rendered diploma. Failing to do so is not an error; the diploma is simply rendered again.
+     *
+     * @param key      the key as obtained by {@link #keyFor(Generation, DiplomaGenerator)}
+     * @param rendered the rendered diploma; it remains owned by the caller
+     */
+    public void save(@Nullable String key, File rendered) {
+        if (key == null) {
+            return;
+        }
+
+        final var path = pathOf(key);
+        try {
+            final var temporary = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.copy(rendered.toPath(), temporary, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            add(key, Files.size(path));
+        } catch (IOException e) {
+            Log.warnf(e, "Could not store rendered diploma %s", key);
+        }
+    }
+
+    private boolean initialize() {
+        try {
+            Files.createDirectories(directory);
+            try (final Stream<Path> files = Files.list(directory)) {
+                files.filter(Files::isRegularFile)
+                        .sorted(Comparator.comparing(RenderedDiplomaStore::lastModified))
+                        .forEach(this::restore);
+            }
+            Log.infof("Rendered diploma store at %s holds %d diplomas (%d bytes)", directory, count(), size());
+            evict();
+            return true;
+        } catch (IOException e) {
+            Log.warnf(e, "Rendered diploma store at %s is not usable, diplomas will always be rendered", directory);
+            return false;
+        }
+    }
+
+    private void restore(Path path) {
+        final var fileName = path.getFileName().toString();
+        try {
+            if (fileName.endsWith(SUFFIX)) {
+                add(fileName.substring(0, fileName.length() - SUFFIX.length()), Files.size(path));
+            } else {
+                // leftover of an interrupted save
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            Log.warnf(e, "Could not restore rendered diploma %s", path);
+        }
+    }
+
+    private void add(String key, long length) {
+        synchronized (entries) {
+            final var previous = entries.put(key, length);
+            size += length - (previous != null ? previous : 0L);
+        }
+        evict();
+    }
+
+    private void forget(String key) {
+        synchronized (entries) {
+            final var previous = entries.remove(key);
+            size -= previous != null ? previous : 0L;
+        }
+    }
+
+    private void evict() {
+        final List<String> evicted = new ArrayList<>();
+        synchronized (entries) {
+            final var iterator = entries.entrySet().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                final var eldest = iterator.next();
+                size -= eldest.getValue();
+                iterator.remove();
+                evicted.add(eldest.getKey());
+            }
+        }
+
+        for (final var key : evicted) {
+            try {
+                Files.deleteIfExists(pathOf(key));
+                evictionCounter.increment();
+            } catch (IOException e) {
+                Log.warnf(e, "Could not evict rendered diploma %s", key);
+            }
+        }
+    }
+
+    private Path pathOf(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static void touch(Path path) {
+        try {
+            // NB: keeps the order of use across restarts
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            Log.debugf(e, "Could not touch %s", path);
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0L);
+        }
+    }
+
+    @VisibleForTesting
+    long size() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    @VisibleForTesting
+    int count() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import io.quarkus.runtime.configuration.MemorySize;
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Settings of the {@link RenderedDiplomaStore}.
+ */
+@ConfigMapping(prefix = "pdf.store")
+public interface RenderedDiplomaStoreConfiguration {
+
+    /**
+     * @return whether rendered diplomas are kept on disk and reused
+     */
+    @WithDefault("true")
+    boolean enabled();
+
+    /**
+     * @return the directory holding the rendered diplomas; a directory below <code>java.io.tmpdir</code> if not set
+     */
+    Optional<Path> directory();
+
+    /**
+     * @return the total size of all stored diplomas; the least recently used ones are evicted beyond that
+     */
+    @WithDefault("256M")
+    MemorySize maxSize();
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Signals that a render was rejected, because all rendering slots are busy and the wait queue is full.
+ *
+ * @author schwingenschloegl
+ */
+public final class RenderingCapacityExceededException extends IOException {
+
+    private final transient Duration retryAfter;
+
+    public RenderingCapacityExceededException(Duration retryAfter) {
+        super("PDF rendering capacity exceeded.");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
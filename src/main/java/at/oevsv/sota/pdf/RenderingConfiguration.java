@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * Limits for PDF rendering; every render needs tens of megabytes of raster, so the number of concurrent renders is
+ * what effectively bounds the heap.
+ */
+@ConfigMapping(prefix = "pdf.rendering")
+public interface RenderingConfiguration {
+
+    /**
+     * @return the number of renders that may run concurrently
+     */
+    @WithDefault("2")
+    int slots();
+
+    /**
+     * @return the number of renders that may wait for a free slot; any further request is rejected
+     */
+    @WithDefault("8")
+    int queueSize();
+
+    /**
+     * @return the time after which a rejected client should retry
+     */
+    @WithDefault("PT30S")
+    Duration retryAfter();
+
+    /**
+     * @return the maximum time a caller waits for its render to complete (including waiting for a slot)
+     */
+    @WithDefault("PT2M")
+    Duration timeout();
+}
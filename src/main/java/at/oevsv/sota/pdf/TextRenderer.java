@@ -16,10 +16,20 @@
 
 package at.oevsv.sota.pdf;
 
-import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfContentByte;
 
 import java.io.IOException;
 
 public interface TextRenderer {
-    void writeText(PdfWriter writer) throws IOException;
+
+    /**
+     * Writes all text that is shared by diplomas with the same template (see {@link DiplomaTemplates}).
+     */
+    void writeTemplateText(PdfContentByte canvas, Rectangle pageSize) throws IOException;
+
+    /**
+     * Writes the text that differs from diploma to diploma (call sign, name, ID, date, ...).
+     */
+    void stampText(PdfContentByte canvas, Rectangle pageSize) throws IOException;
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.Candidate;
+import at.oevsv.sota.data.api.Generation;
+import at.oevsv.sota.data.api.RenderProfile;
+import at.oevsv.sota.data.api.SignedCandidate;
+import at.oevsv.sota.data.domain.Summit;
+import at.oevsv.sota.pdf.diploma.DiplomaFormats;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+import io.quarkus.cache.CacheResult;
+import io.quarkus.logging.Log;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.annotation.security.PermitAll;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.Nonnull;
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Small raster previews of diplomas, showing the image layer only (no text). Thumbnails depend on nothing but the shape
+ * of a candidate, so there are only a few hundred distinct ones, and they are cached.
+ *
+ * @author schwingenschloegl
+ */
+@Path("/api/diploma/thumbnail")
+public class ThumbnailResource {
+
+    /**
+     * Aspect ratio of the artwork (A4 landscape).
+     */
+    private static final double ASPECT_RATIO = 2480.0 / 3508.0;
+
+    @ConfigProperty(name = "pdf.thumbnail.width", defaultValue = "600")
+    int width;
+
+    private final DiplomaFormats diplomaFormats;
+    private final PdfRenderingService rendering;
+
+    /**
+     * Everything the image layer of a diploma depends on.
+     *
+     * @param category        the category of the diploma
+     * @param rank            the rank of the diploma
+     * @param satisfiedStates the states with at least one activation
+     * @param locale          the language, for diplomas with localized artwork
+     */
+    public record Key(Candidate.Category category, Candidate.Rank rank, Set<Summit.State> satisfiedStates, Locale locale) {
+
+        @Nonnull
+        public static Key of(Candidate candidate, Locale locale) {
+            final Set<Summit.State> satisfied = EnumSet.noneOf(Summit.State.class);
+            candidate.activations().forEach((state, count) -> {
+                if (state != null && count != null && count > 0L) {
+                    satisfied.add(state);
+                }
+            });
+            return new Key(candidate.category(), candidate.rank(), Set.copyOf(satisfied), locale);
+        }
+
+        /**
+         * @return a generation (without requester) of the shape described by this key
+         */
+        @Nonnull
+        Generation toGeneration() {
+            final Map<Summit.State, Long> activations = new EnumMap<>(Summit.State.class);
+            satisfiedStates.forEach(state -> activations.put(state, 1L));
+            final var generation = new Generation(null, new Candidate(null, null, category, rank, activations));
+            generation.setLocale(locale);
+            generation.setProfile(RenderProfile.PREVIEW);
+            return generation;
+        }
+    }
+
+    @Inject
+    public ThumbnailResource(DiplomaFormats diplomaFormats, PdfRenderingService rendering) {
+        this.diplomaFormats = Objects.requireNonNull(diplomaFormats);
+        this.rendering = Objects.requireNonNull(rendering);
+    }
+
+    @POST
+    @PermitAll
+    @RunOnVirtualThread
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces("image/png")
+    @WithSpan(kind = SpanKind.SERVER, value = "Diploma thumbnail")
+    public byte[] thumbnail(SignedCandidate candidate, @QueryParam("lang") @DefaultValue("de") String language) throws IOException {
+        if (candidate == null || candidate.candidate() == null) {
+            throw new BadRequestException("No candidate given.");
+        }
+        try {
+            candidate.verifyIntegrity();
+        } catch (IllegalStateException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        final var locale = StringUtils.equalsIgnoreCase(language, "en") ? Locale.ENGLISH : Locale.GERMAN;
+        try {
+            return thumbnailFor(Key.of(candidate.candidate(), locale));
+        } catch (RenderingCapacityExceededException e) {
+            throw new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, e.getRetryAfter().toSeconds())
+                    .build());
+        }
+    }
+
+    /**
+     * Renders the thumbnail for the given shape on the {@link PdfRenderingService}, as the artwork is decoded at full
+     * size before being scaled down.
+     *
+     * @return a PNG image; the returned array is shared and must not be modified
+     */
+    @CacheResult(cacheName = "diploma-thumbnail-cache")
+    public byte[] thumbnailFor(Key key) throws IOException {
+        final var generation = key.toGeneration();
+        final var format = diplomaFormats.generationStrategyFor(generation);
+        if (format == null) {
+            throw new BadRequestException(String.format("No format found for %s", key));
+        }
+
+        Log.infof("Rendering thumbnail %s", key);
+        return rendering.render(() -> render(format.createImageRenderer(generation), width));
+    }
+
+    @Nonnull
+    static byte[] render(ImageRenderer renderer, int width) throws IOException {
+        final int height = (int) Math.round(width * ASPECT_RATIO);
+        final var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final var graphics = image.createGraphics();
+        try {
+            graphics.setClip(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            renderer.render(graphics);
+        } finally {
+            graphics.dispose();
+        }
+
+        try (final var os = new ByteArrayOutputStream()) {
+            if (!ImageIO.write(image, "png", os)) {
+                throw new IOException("No PNG encoder available.");
+            }
+            return os.toByteArray();
+        }
+    }
+}
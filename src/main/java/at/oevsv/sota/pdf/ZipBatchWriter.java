@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import io.quarkus.logging.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders a batch of files in parallel on the {@link PdfRenderingService} and writes them into a ZIP archive in order
+ * of completion. At most <code>parallelism</code> rendered files exist at any time (spilled to disk), so memory stays
+ * flat regardless of the size of the batch.
+ * <p>
+ * As the response is committed with the first entry, a file that cannot be rendered does not abort the archive: it is
+ * skipped and listed in {@value #ERROR_MANIFEST} at the end of the archive instead. A render that does not complete
+ * within <code>timeout</code> is cancelled and listed likewise. If the {@link PdfRenderingService} is saturated by other
+ * callers, the batch backs off and retries for up to <code>timeout</code> before it gives up on the entry at hand.
+ *
+ * @author schwingenschloegl
+ */
+final class ZipBatchWriter {
+
+    static final String ERROR_MANIFEST = "errors.txt";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Duration INITIAL_BACKOFF = Duration.ofMillis(50L);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(1L);
+
+    /**
+     * A single file of the batch.
+     *
+     * @param fileName the name of the entry in the archive
+     * @param task     renders the file into a temporary file, which is deleted after it has been written
+     */
+    record Entry(String fileName, PdfRenderingService.RenderTask<File> task) {
+    }
+
+    private record Rendered(CompletableFuture<File> render, String fileName, File file, Throwable failure) {
+    }
+
+    private final PdfRenderingService rendering;
+    private final int parallelism;
+    private final Duration timeout;
+
+    ZipBatchWriter(PdfRenderingService rendering, int parallelism, Duration timeout) {
+        this.rendering = rendering;
+        this.parallelism = Math.max(1, parallelism);
+        this.timeout = timeout;
+    }
+
+    void write(List<Entry> entries, OutputStream os) throws IOException {
+        final var zip = new ZipOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+        zip.setLevel(Deflater.BEST_SPEED); // NB: PDFs are compressed already
+
+        final Deque<Entry> pending = new ArrayDeque<>(entries);
+        final BlockingQueue<Rendered> completed = new LinkedBlockingQueue<>();
+        final AtomicBoolean aborted = new AtomicBoolean(false);
+        // NB: in order of submission, so the first one is the one to time out next
+        final Map<CompletableFuture<File>, Long> deadlines = new LinkedHashMap<>();
+        final Set<String> names = new HashSet<>();
+        final List<String> errors = new ArrayList<>();
+        try {
+            while (!pending.isEmpty() || !deadlines.isEmpty()) {
+                submitAvailable(pending, completed, aborted, deadlines, errors, !names.isEmpty());
+                if (deadlines.isEmpty()) {
+                    continue;
+                }
+
+                final var next = deadlines.entrySet().iterator().next();
+                final var rendered = completed.poll(next.getValue() - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (rendered == null) {
+                    // NB: the cancelled render reports its failure like any other
+                    next.getKey().cancel(true);
+                    deadlines.put(next.getKey(), Long.MAX_VALUE);
+                    continue;
+                }
+
+                deadlines.remove(rendered.render());
+                try {
+                    if (rendered.failure() != null) {
+                        Log.warnf(rendered.failure(), "Skipping %s in batch", rendered.fileName());
+                        errors.add(rendered.fileName() + ": " + describe(rendered.failure()));
+                    } else {
+                        writeEntry(zip, uniqueName(names, rendered.fileName()), rendered.file());
+                    }
+                } finally {
+                    deleteQuietly(rendered.file());
+                }
+            }
+            if (!errors.isEmpty()) {
+                zip.putNextEntry(new ZipEntry(uniqueName(names, ERROR_MANIFEST)));
+                zip.write((String.join("\n", errors) + "\n").getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for render.");
+        } finally {
+            aborted.set(true);
+            deadlines.keySet().forEach(future -> future.cancel(true));
+            // NB: renders still in flight delete their own files once they see the abort; these are the ones that already completed
+            Rendered rendered;
+            while ((rendered = completed.poll()) != null) {
+                deleteQuietly(rendered.file());
+            }
+        }
+    }
+
+    private void submitAvailable(Deque<Entry> pending, BlockingQueue<Rendered> completed, AtomicBoolean aborted,
+                                 Map<CompletableFuture<File>, Long> deadlines, List<String> errors, boolean committed)
+            throws RenderingCapacityExceededException, InterruptedException {
+        boolean waiting = false;
+        long retryUntil = 0L;
+        long backoff = INITIAL_BACKOFF.toNanos();
+        while (!pending.isEmpty() && deadlines.size() < parallelism) {
+            final var entry = pending.peek();
+            try {
+                final var future = rendering.submit(entry.task(), ZipBatchWriter::deleteQuietly);
+                deadlines.put(future, System.nanoTime() + timeout.toNanos());
+                future.whenComplete((file, failure) -> {
+                    final var rendered = new Rendered(future, entry.fileName(), file, failure);
+                    completed.add(rendered);
+                    if (aborted.get() && completed.remove(rendered)) {
+                        deleteQuietly(file);
+                    }
+                });
+                waiting = false;
+                backoff = INITIAL_BACKOFF.toNanos();
+            } catch (RenderingCapacityExceededException e) {
+                if (!deadlines.isEmpty()) {
+                    // invariant: there is at least one render in flight; retry once that one has completed
+                    break;
+                }
+                if (!committed) {
+                    // NB: nothing has been written yet, so the whole batch can still be rejected
+                    throw e;
+                }
+
+                // NB: other callers hold all slots; wait for them instead of giving up on the rest of the batch at once
+                final long now = System.nanoTime();
+                if (!waiting) {
+                    waiting = true;
+                    retryUntil = now + timeout.toNanos();
+                }
+                if (retryUntil - now > 0L) {
+                    TimeUnit.NANOSECONDS.sleep(Math.min(backoff, retryUntil - now));
+                    backoff = Math.min(2L * backoff, MAX_BACKOFF.toNanos());
+                    continue;
+                }
+                // NB: saturated for a whole timeout; the remaining entries would not fare any better
+                errors.add(entry.fileName() + ": rendering capacity exceeded");
+            }
+            pending.pop();
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, File file) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        Files.copy(file.toPath(), zip);
+        zip.closeEntry();
+        zip.flush();
+    }
+
+    static String uniqueName(Set<String> names, String fileName) {
+        var candidate = fileName;
+        int counter = 1;
+        while (!names.add(candidate)) {
+            ++counter;
+            final int extension = fileName.lastIndexOf('.');
+            candidate = extension >= 0
+                    ? fileName.substring(0, extension) + "_" + counter + fileName.substring(extension)
+                    : fileName + "_" + counter;
+        }
+        return candidate;
+    }
+
+    private static String describe(Throwable failure) {
+        if ((failure instanceof CompletionException || failure instanceof UncheckedIOException) && failure.getCause() != null) {
+            return describe(failure.getCause());
+        }
+        if (failure instanceof CancellationException) {
+            return "did not complete in time";
+        }
+        if (failure.getCause() != null && failure.getMessage() == null) {
+            return describe(failure.getCause());
+        }
+        return failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            Log.warnf(e, "Could not delete temporary file %s", file);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf.diploma;
+
+import com.lowagie.text.Font;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the fonts and initializes image decoding on startup, so the first diploma does not pay for it. Both cannot
+ * happen at build time of the native image (see {@link DiplomaAssets}), as they depend on classes initialized at run
+ * time.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+class AssetWarmUp {
+
+    @ConfigProperty(name = "pdf.assets.warm-up", defaultValue = "true")
+    boolean warmUp;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!warmUp) {
+            return;
+        }
+
+        final long started = System.nanoTime();
+        try {
+            for (final var fontName : DiplomaAssets.fontNames()) {
+                Fonts.loadFont(fontName, 10, Font.NORMAL);
+            }
+            try (final InputStream is = DiplomaAssets.open("/pdf/images/state/positive/oe1.png")) {
+                ImageIO.read(is);
+            }
+            Log.infof("Warmed up diploma assets in %d ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Could not warm up diploma assets.", e);
+        }
+    }
+}
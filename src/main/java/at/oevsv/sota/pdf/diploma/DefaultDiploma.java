@@ -20,6 +20,7 @@ import at.oevsv.sota.pdf.DiplomaGenerator;
 import at.oevsv.sota.data.api.Generation;
 import at.oevsv.sota.pdf.ImageRenderer;
 import at.oevsv.sota.pdf.TextRenderer;
+import io.quarkus.runtime.Startup;
 import jakarta.enterprise.context.ApplicationScoped;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -27,6 +28,7 @@ import org.eclipse.microprofile.config.inject.ConfigProperty;
 /**
  * Generating the original diploma.
  */
+@Startup
 @ApplicationScoped
 final class DefaultDiploma implements DiplomaGenerator {
 
@@ -36,6 +38,8 @@ final class DefaultDiploma implements DiplomaGenerator {
     @ConfigProperty(name = "diploma.debug.layout", defaultValue = "false")
     boolean debugLayout;
 
+    private final DiplomaLayout layout = DiplomaLayout.load("default", DefaultTextRenderer.REGIONS, true);
+
     @Override
     public boolean canHandle(Generation generation) {
         return !generation.getCandidate().category().isSpecialDiploma();
@@ -62,11 +66,11 @@ final class DefaultDiploma implements DiplomaGenerator {
 
     @Override
     public ImageRenderer createImageRenderer(Generation generation) {
-        return new DefaultImageRenderer(generation.getCandidate(), debugLayout);
+        return new DefaultImageRenderer(layout, generation.getCandidate(), generation.getProfile(), debugLayout);
     }
 
     @Override
     public TextRenderer createTextRenderer(Generation generation) {
-        return new DefaultTextRenderer(generation, diplomaManager, debugLayout, () -> idFor(generation));
+        return new DefaultTextRenderer(layout, generation, diplomaManager, debugLayout, () -> idFor(generation));
     }
 }
@@ -17,16 +17,22 @@
 package at.oevsv.sota.pdf.diploma;
 
 import at.oevsv.sota.data.api.Candidate;
+import at.oevsv.sota.data.api.RenderProfile;
 import at.oevsv.sota.data.domain.Summit;
 import at.oevsv.sota.pdf.ImageRenderer;
+import at.oevsv.sota.pdf.Rasters;
+import com.lowagie.text.Image;
+import com.lowagie.text.pdf.PdfContentByte;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -77,44 +83,94 @@ final class DefaultImageRenderer implements ImageRenderer {
         public abstract int heightFor(int currentIndex, int minimumHeight, int maximumHeight);
     }
 
+    private final DiplomaLayout layout;
     private final Candidate candidate;
+    private final RenderProfile profile;
     private final boolean debugLayout;
-    private final StateLayoutMode stateLayoutMode;
 
-    DefaultImageRenderer(Candidate candidate, boolean debugLayout) {
+    DefaultImageRenderer(DiplomaLayout layout, Candidate candidate, RenderProfile profile, boolean debugLayout) {
+        this.layout = layout;
         this.candidate = candidate;
+        this.profile = profile;
         this.debugLayout = debugLayout;
-        stateLayoutMode = StateLayoutMode.CURVED;
     }
 
     @Override
     public void render(Graphics2D target) throws IOException {
-        renderBackground(target, target.getClipBounds());
+        final var bounds = target.getClipBounds();
+        target.drawImage(composeBackground(true), 0, 0, (int) bounds.getWidth(), (int) bounds.getHeight(), null);
     }
 
-    private void renderBackground(Graphics2D target, Rectangle bounds) throws IOException {
+    @Override
+    public BufferedImage renderTemplate() throws IOException {
+        return composeBackground(false);
+    }
+
+    /**
+     * Stamps the state badges (the only variable image elements) on top of a template rendered via
+     * {@link #renderTemplate()}. The badges are placed as separate images, so the background does not need to
+     * be re-encoded. Below print resolution, they are scaled down before embedding them.
+     */
+    @Override
+    public void stamp(PdfContentByte canvas, com.lowagie.text.Rectangle pageSize) throws IOException {
+        final float scale = pageSize.getWidth() / layout.artwork().width();
+        final var placements = statePlacements(candidate);
+        for (final var placement : placements) {
+            final Image image;
+            final float width;
+            final float height;
+            if (profile.getScale() < 1.0) {
+                final BufferedImage raster;
+                try (final InputStream is = DiplomaAssets.open(placement.resourceName())) {
+                    raster = ImageIO.read(is);
+                }
+                image = Image.getInstance(Rasters.scaled(raster, profile.getScale()), null);
+                width = raster.getWidth() * scale;
+                height = raster.getHeight() * scale;
+            } else {
+                image = Image.getInstance(DiplomaAssets.bytes(placement.resourceName()));
+                width = image.getWidth() * scale;
+                height = image.getHeight() * scale;
+            }
+            image.scaleAbsolute(width, height);
+            // NB: raster coordinates have their origin top left, PDF user space bottom left
+            image.setAbsolutePosition(pageSize.getLeft() + placement.x() * scale, pageSize.getTop() - placement.y() * scale - height);
+            canvas.addImage(image);
+        }
+    }
+
+    /**
+     * Composes the elements directly onto the decoded background, which is decoded at the resolution of the profile and
+     * in its own color model; there is no other full-size raster.
+     */
+    @Nonnull
+    private BufferedImage composeBackground(boolean includeStates) throws IOException {
         // Background Size: 3508 x 2480 px (A4, 300 dpi)
         try (final InputStream is = this.getClass().getResourceAsStream(backgroundResource())) {
             if (is != null) {
-                final var background = ImageIO.read(is);
-                final var graphics = background.createGraphics();
+                final var artwork = Rasters.read(is, profile.getScale());
+                // NB: all placements are given in pixels of the artwork, regardless of the resolution rendered at
+                final var graphics = artwork.createGraphics();
                 try {
-                    final int stateWidth = 320 + 15; // 320px is the actual image size; add a little extra spacing
-                    final int center = background.getWidth() / 2;
-                    final int stateStartX = center - (int) ((9 * stateWidth) / 2.0);
-                    final int stateStartY = background.getHeight() - 470;
-                    renderStates(graphics, stateStartX, stateStartY - 500, stateStartY - 100, stateWidth, candidate);
+                    if (includeStates) {
+                        for (final var placement : statePlacements(candidate)) {
+                            renderResourceAt(graphics, placement.resourceName(), placement.x(), placement.y());
+                        }
+                    }
 
-                    renderResourceAt(graphics, "/pdf/images/banner/" + candidate.rank().toString().toLowerCase(Locale.ROOT) + ".png", center - 864 / 2, 675);
+                    final var banner = layout.artwork().banner();
+                    if (banner != null) {
+                        renderResourceAt(graphics, "/pdf/images/banner/" + candidate.rank().toString().toLowerCase(Locale.ROOT) + ".png", banner.x(), banner.y());
+                    }
 
                     if (debugLayout) {
-                        renderGrid(graphics, background.getWidth(), background.getHeight(), 100, 100);
+                        renderGrid(graphics, artwork.width(), artwork.height(), 100, 100);
                     }
                 } finally {
                     graphics.dispose();
                 }
 
-                target.drawImage(background, 0, 0, (int) bounds.getWidth(), (int) bounds.getHeight(), null);
+                return artwork.image();
             } else {
                 throw new IOException("Could not load background.");
             }
@@ -135,16 +191,22 @@ final class DefaultImageRenderer implements ImageRenderer {
         }
     }
 
-    private void renderStates(Graphics2D target, int startX, int minY, int maxY, int width, Candidate candidate) throws IOException {
-        for (int loopIdx = 1; loopIdx <= 9; ++loopIdx) {
-            final int y = stateLayoutMode.heightFor(loopIdx - 1, minY, maxY);
+    /**
+     * A state badge placed in the coordinate system of the background image.
+     */
+    private record StatePlacement(String resourceName, int x, int y) {
+    }
 
-            if (isStateSatisfied(candidate, Summit.State.stateForOrdinal(loopIdx))) {
-                renderResourceAt(target, "/pdf/images/state/positive/oe" + loopIdx + ".png", startX + (loopIdx - 1) * width, y);
-            } else {
-                renderResourceAt(target, "/pdf/images/state/negative/oe" + loopIdx + ".png", startX + (loopIdx - 1) * width, y);
-            }
+    @Nonnull
+    private List<StatePlacement> statePlacements(Candidate candidate) {
+        final var positions = layout.statePositions();
+        final List<StatePlacement> result = new ArrayList<>(positions.size());
+        for (int loopIdx = 1; loopIdx <= positions.size(); ++loopIdx) {
+            final var position = positions.get(loopIdx - 1);
+            final var polarity = isStateSatisfied(candidate, Summit.State.stateForOrdinal(loopIdx)) ? "positive" : "negative";
+            result.add(new StatePlacement("/pdf/images/state/" + polarity + "/oe" + loopIdx + ".png", position.x(), position.y()));
         }
+        return result;
     }
 
     private static boolean isStateSatisfied(Candidate candidate, @Nullable Summit.State state) {
@@ -157,13 +219,9 @@ final class DefaultImageRenderer implements ImageRenderer {
     }
 
     private void renderResourceAt(Graphics2D target, String resourceName, int startX, int startY) throws IOException {
-        try (final InputStream is = this.getClass().getResourceAsStream(resourceName)) {
-            if (is != null) {
-                final var image = ImageIO.read(is);
-                target.drawImage(image, startX, startY, image.getWidth(), image.getHeight(), null);
-            } else {
-                throw new IOException(MessageFormat.format("Could not load {0}.", resourceName));
-            }
+        try (final InputStream is = DiplomaAssets.open(resourceName)) {
+            final var image = ImageIO.read(is);
+            target.drawImage(image, startX, startY, image.getWidth(), image.getHeight(), null);
         }
     }
 }
@@ -20,7 +20,6 @@ import at.oevsv.sota.data.api.Candidate;
 import at.oevsv.sota.data.api.Requester;
 import at.oevsv.sota.data.api.Generation;
 import at.oevsv.sota.pdf.TextRenderer;
-import com.ibm.icu.text.RuleBasedNumberFormat;
 import com.lowagie.text.Chunk;
 import com.lowagie.text.Element;
 import com.lowagie.text.Font;
@@ -28,109 +27,114 @@ import com.lowagie.text.Paragraph;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.ColumnText;
 import com.lowagie.text.pdf.PdfContentByte;
-import com.lowagie.text.pdf.PdfWriter;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nonnull;
 import java.awt.*;
 import java.io.IOException;
-import java.text.MessageFormat;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.ResourceBundle;
+import java.util.Set;
 
 final class DefaultTextRenderer implements TextRenderer {
 
+    /**
+     * The regions of the {@link DiplomaLayout} this renderer writes into.
+     */
+    static final Set<String> REGIONS = Set.of("title", "rank", "header", "name", "body", "manager", "info");
+
+    private static final Color TITLE_COLOR = new Color(254, 253, 3);
+
+    private final DiplomaLayout layout;
     private final Candidate candidate;
     private final Requester requester;
-    private final Locale locale;
-    private final ResourceBundle resourceBundle;
+    private final LocaleContext localeContext;
     private final String diplomaManager;
     private final boolean debugLayout;
     private final DiplomaIdGenerator idGenerator;
 
-    DefaultTextRenderer(Generation generation, String diplomaManager, boolean debugLayout, DiplomaIdGenerator idGenerator) {
+    DefaultTextRenderer(DiplomaLayout layout, Generation generation, String diplomaManager, boolean debugLayout, DiplomaIdGenerator idGenerator) {
+        this.layout = Objects.requireNonNull(layout);
         this.candidate = Objects.requireNonNull(generation.getCandidate());
         this.requester = Objects.requireNonNull(generation.getRequester());
-        this.locale = Objects.requireNonNull(generation.getLocale());
-        resourceBundle = ResourceBundle.getBundle("pdf.i18n.messages", locale, ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_PROPERTIES));
+        this.localeContext = LocaleContext.of(Objects.requireNonNull(generation.getLocale()));
         this.diplomaManager = Objects.requireNonNull(diplomaManager);
         this.debugLayout = debugLayout;
         this.idGenerator = Objects.requireNonNull(idGenerator);
     }
 
     @Override
-    public void writeText(PdfWriter writer) throws IOException {
+    public void writeTemplateText(PdfContentByte canvas, Rectangle pageSize) throws IOException {
         final var britannic = Fonts.loadFont("britannic.ttf", 72, Font.BOLD);
-        britannic.setColor(new Color(254, 253, 3));
-        writeTitle(writer, britannic);
+        britannic.setColor(TITLE_COLOR);
+        writeTitle(canvas, pageSize, britannic);
 
-        final var consolas = Fonts.loadFont("consola.ttf", 11, Font.NORMAL);
-        consolas.setColor(new Color(200, 200, 200));
-        final var smaller = new Font(consolas);
-        smaller.setSize(8);
-        writeDiplomaManager(writer, smaller);
+        final var consolas = consolas();
+        writeDiplomaManager(canvas, pageSize, smaller(consolas));
+        writeMainBoxFrame(canvas, pageSize, consolas);
 
+        final var outline = Fonts.loadFont("florencesans.ttf", 26, Font.BOLD);
+        writeRankBanner(canvas, pageSize, outline, consolas);
+    }
+
+    @Override
+    public void stampText(PdfContentByte canvas, Rectangle pageSize) throws IOException {
         final var diplomaId = idGenerator.generateId();
-        writeDiplomaInfo(writer, smaller, LocalDate.now(), diplomaId);
+        writeDiplomaInfo(canvas, pageSize, smaller(consolas()), LocalDate.now(), diplomaId);
 
         final var copperplateGothic = Fonts.loadFont("tiffanygtcc.ttf", 40, Font.BOLD);
-        copperplateGothic.setColor(britannic.getColor());
-        writeMainBox(writer, consolas, copperplateGothic);
+        copperplateGothic.setColor(TITLE_COLOR);
+        writeName(canvas, pageSize, copperplateGothic);
+    }
 
-        final var outline = Fonts.loadFont("florencesans.ttf", 26, Font.BOLD);
-        writeRankBanner(writer, outline, consolas);
+    @Nonnull
+    private static Font consolas() throws IOException {
+        final var consolas = Fonts.loadFont("consola.ttf", 11, Font.NORMAL);
+        consolas.setColor(new Color(200, 200, 200));
+        return consolas;
     }
 
-    private void writeRankBanner(PdfWriter writer, Font bannerFont, Font surroundingFont) {
+    @Nonnull
+    private static Font smaller(Font font) {
+        final var smaller = new Font(font);
+        smaller.setSize(8);
+        return smaller;
+    }
+
+    private void writeRankBanner(PdfContentByte canvas, Rectangle pageSize, Font bannerFont, Font surroundingFont) {
         final var paragraph = new Paragraph();
         paragraph.setAlignment(Element.ALIGN_CENTER);
-        final var prefix = resourceBundle.getString("diploma.rank.prefix");
+        final var prefix = localeContext.getString("diploma.rank.prefix");
         if (StringUtils.isNotBlank(prefix)) {
             final var prefixChunk = new Chunk(prefix, surroundingFont);
             paragraph.add(prefixChunk);
         }
-        final var chunk = new Chunk(resourceBundle.getString("diploma.rank." + candidate.rank().toString().toLowerCase(Locale.ROOT)), bannerFont);
+        final var chunk = new Chunk(localeContext.getString("diploma.rank." + candidate.rank().toString().toLowerCase(Locale.ROOT)), bannerFont);
         chunk.setTextRenderMode(PdfContentByte.TEXT_RENDER_MODE_STROKE, 0.1f, Color.BLACK);
         paragraph.add(chunk);
-        final var suffix = resourceBundle.getString("diploma.rank.suffix");
+        final var suffix = localeContext.getString("diploma.rank.suffix");
         if (StringUtils.isNotBlank(suffix)) {
             final var suffixChunk = new Chunk(suffix, surroundingFont);
             paragraph.add(suffixChunk);
         }
 
-        final var bounds = writer.getPageSize();
-        final var llx = bounds.getLeft(205.0f);
-        final var lly = bounds.getTop(130.0f);
-        final var urx = bounds.getRight(205.0f);
-        final var ury = bounds.getBottom(180.0f);
-        final var height = ury - lly;
-
-        writeColumn(writer, paragraph, new Rectangle(llx, lly + height / 3.0f + 35.0f, urx, ury));
+        writeColumn(canvas, paragraph, layout.region("rank", pageSize));
     }
 
-    private void writeDiplomaManager(PdfWriter writer, Font font) {
+    private void writeDiplomaManager(PdfContentByte canvas, Rectangle pageSize, Font font) {
         final var paragraph = new Paragraph();
         paragraph.setAlignment(Element.ALIGN_CENTER);
-        paragraph.add(new Chunk(resourceBundle.getString("diploma.manager.label"), font));
+        paragraph.add(new Chunk(localeContext.getString("diploma.manager.label"), font));
         paragraph.add(Chunk.NEWLINE);
         paragraph.add(new Chunk(diplomaManager, font));
 
-        final var bounds = writer.getPageSize();
-        final var llx = bounds.getLeft(25.0f);
-        // NB: 100.0f is the top line of the box; subtracting a bit because vertical alignment does not work properly
-        final var lly = bounds.getBottom(100.0f - 20.0f);
-        final var urx = bounds.getLeft(145.0f);
-        final var ury = bounds.getBottom(30.0f);
-
-        writeColumn(writer, paragraph, new Rectangle(llx, lly, urx, ury));
+        writeColumn(canvas, paragraph, layout.region("manager", pageSize));
     }
 
-    private void writeColumn(PdfWriter writer, Paragraph paragraph, Rectangle bounds) {
-        ColumnText ct = new ColumnText(writer.getDirectContent());
+    private void writeColumn(PdfContentByte canvas, Paragraph paragraph, Rectangle bounds) {
+        ColumnText ct = new ColumnText(canvas);
         ct.setAlignment(Element.ALIGN_MIDDLE);
         ct.addElement(paragraph);
 
@@ -142,101 +146,80 @@ final class DefaultTextRenderer implements TextRenderer {
         ct.go();
 
         if (debugLayout) {
-            debugRectangle(writer, llx, lly, urx, ury);
+            debugRectangle(canvas, llx, lly, urx, ury);
         }
     }
 
-    private static void debugRectangle(PdfWriter writer, float llx, float lly, float urx, float ury) {
-        final var cb = writer.getDirectContent();
+    private static void debugRectangle(PdfContentByte cb, float llx, float lly, float urx, float ury) {
         cb.setLineWidth(2.0f);
         cb.rectangle(llx, lly, urx - llx, ury - lly);
         cb.stroke();
     }
 
-    private void writeDiplomaInfo(PdfWriter writer, Font font, LocalDate date, String diplomaId) {
+    private void writeDiplomaInfo(PdfContentByte canvas, Rectangle pageSize, Font font, LocalDate date, String diplomaId) {
         final var paragraph = new Paragraph();
         paragraph.setAlignment(Element.ALIGN_CENTER);
-        paragraph.add(new Chunk(resourceBundle.getString("diploma.id.label"), font));
+        paragraph.add(new Chunk(localeContext.getString("diploma.id.label"), font));
         paragraph.add(new Chunk(" " + diplomaId, font));
         paragraph.add(Chunk.NEWLINE);
-        paragraph.add(new Chunk(resourceBundle.getString("diploma.date.label"), font));
-        final var formattedDate = DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(locale).format(date);
+        paragraph.add(new Chunk(localeContext.getString("diploma.date.label"), font));
+        final var formattedDate = localeContext.formatDate(date);
         paragraph.add(new Chunk(" " + formattedDate, font));
 
-        final var bounds = writer.getPageSize();
-        final var llx = bounds.getRight(145.0f);
-        // NB: 100.0f is the top line of the box; subtracting a bit because vertical alignment does not work properly
-        final var lly = bounds.getBottom(100.0f - 20.0f);
-        final var urx = bounds.getRight(25.0f);
-        final var ury = bounds.getBottom(30.0f);
-
-        writeColumn(writer, paragraph, new Rectangle(llx, lly, urx, ury));
+        writeColumn(canvas, paragraph, layout.region("info", pageSize));
     }
 
-    private void writeTitle(PdfWriter writer, Font font) {
+    private void writeTitle(PdfContentByte canvas, Rectangle pageSize, Font font) {
         final var paragraph = new Paragraph();
         paragraph.setAlignment(Element.ALIGN_CENTER);
-        final var title = new Chunk(resourceBundle.getString("diploma.title"), font);
+        final var title = new Chunk(localeContext.getString("diploma.title"), font);
         title.setTextRenderMode(PdfContentByte.TEXT_RENDER_MODE_FILL_STROKE, 3.0f, Color.BLACK);
         paragraph.add(title);
 
-        final var bounds = writer.getPageSize();
-        final var llx = bounds.getLeft();
-        final var lly = bounds.getTop(80.0f);
-        final var urx = bounds.getRight();
-        final var ury = bounds.getTop(110.0f);
-
-        writeColumn(writer, paragraph, new Rectangle(llx, lly, urx, ury));
+        writeColumn(canvas, paragraph, layout.region("title", pageSize));
     }
 
-    private void writeMainBox(PdfWriter writer, Font normalFont, Font highlightFont) {
-        final var bounds = writer.getPageSize();
-        final var llx = bounds.getLeft(205.0f);
-        final var lly = bounds.getTop(130.0f);
-        final var urx = bounds.getRight(205.0f);
-        final var ury = bounds.getBottom(190.0f);
-        final var height = ury - lly;
-
+    /**
+     * Writes the static parts of the main box, i.e. everything except for the name of the requester.
+     */
+    private void writeMainBoxFrame(PdfContentByte canvas, Rectangle pageSize, Font normalFont) {
         final var header = new Paragraph();
         header.setAlignment(Element.ALIGN_CENTER);
-        header.add(new Chunk(resourceBundle.getString("diploma.header"), normalFont));
+        header.add(new Chunk(localeContext.getString("diploma.header"), normalFont));
         header.add(Chunk.NEWLINE);
-        header.add(new Chunk(resourceBundle.getString("diploma.category." + candidate.category().name().toLowerCase(Locale.ROOT)), normalFont));
-        writeColumn(writer, header, new Rectangle(llx, lly, urx, lly + height / 3.0f));
-
-        final var name = new Paragraph(20f);
-        name.setAlignment(Element.ALIGN_CENTER);
-        name.add(new Chunk(requester.callSign, highlightFont));
-        name.add(Chunk.NEWLINE);
-        name.add(Chunk.NEWLINE);
-        final Font smaller = new Font(highlightFont);
-        smaller.setSize(22);
-        name.add(new Chunk(requester.name, smaller));
-        writeColumn(writer, name, new Rectangle(llx, lly + height / 3.0f - 30.0f, urx, lly + 2.0f * height / 3.0f - 30.0f));
+        header.add(new Chunk(localeContext.getString("diploma.category." + candidate.category().name().toLowerCase(Locale.ROOT)), normalFont));
+        writeColumn(canvas, header, layout.region("header", pageSize));
 
         final var bottom = new Paragraph();
         bottom.setAlignment(Element.ALIGN_CENTER);
-        final String body = formatDiplomaBody();
-        for (final var chunk : body.split("\n")) {
+        for (final var chunk : formatDiplomaBody()) {
             bottom.add(new Chunk(chunk, normalFont));
             bottom.add(Chunk.NEWLINE);
         }
-        bottom.add(new Chunk(resourceBundle.getString("diploma.footer"), normalFont));
+        bottom.add(new Chunk(localeContext.getString("diploma.footer"), normalFont));
 
-        writeColumn(writer, bottom, new Rectangle(llx, lly + 2.0f * height / 3.0f - 30.0f, urx, ury));
+        writeColumn(canvas, bottom, layout.region("body", pageSize));
     }
 
-    @Nonnull
-    private String formatDiplomaBody() {
-        final var activations = formatNumeric(candidate.category().getRequirementFor(candidate.rank()));
-        final var states = formatNumeric(candidate.rank().getRequiredStates());
-        return MessageFormat.format(
-                resourceBundle.getString("diploma.body." + candidate.category().name().toLowerCase(Locale.ROOT)), activations, states);
+    /**
+     * Writes the variable part of the main box, i.e. call sign and name of the requester.
+     */
+    private void writeName(PdfContentByte canvas, Rectangle pageSize, Font highlightFont) {
+        final var name = new Paragraph(20f);
+        name.setAlignment(Element.ALIGN_CENTER);
+        name.add(new Chunk(requester.callSign, highlightFont));
+        name.add(Chunk.NEWLINE);
+        name.add(Chunk.NEWLINE);
+        final Font smaller = new Font(highlightFont);
+        smaller.setSize(22);
+        name.add(new Chunk(requester.name, smaller));
+        writeColumn(canvas, name, layout.region("name", pageSize));
     }
 
     @Nonnull
-    private String formatNumeric(int number) {
-        final var format = new RuleBasedNumberFormat(locale, RuleBasedNumberFormat.SPELLOUT);
-        return MessageFormat.format("{0} ({1})", number, format.format(number));
+    private List<String> formatDiplomaBody() {
+        final var activations = localeContext.formatNumeric(candidate.category().getRequirementFor(candidate.rank()));
+        final var states = localeContext.formatNumeric(candidate.rank().getRequiredStates());
+        return localeContext.formatBody(candidate.category(), activations, states);
     }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf.diploma;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The small, immutable assets of the diplomas (fonts, state badges, rank banners), read into memory once. In the
+ * native image, this class is initialized at build time (see <code>--initialize-at-build-time</code> in
+ * <code>application.properties</code>), so the assets are part of the image heap and never read from resources at run
+ * time; dropping it from the build arguments simply loads them on first use. The backgrounds are excluded on purpose:
+ * they are large and only read when a template is rendered.
+ *
+ * @author schwingenschloegl
+ */
+final class DiplomaAssets {
+
+    private static final String FONTS = "/pdf/fonts/";
+    private static final List<String> FONT_NAMES = List.of("britannic.ttf", "consola.ttf", "florencesans.ttf", "tiffanygtcc.ttf");
+
+    private static final Map<String, byte[]> ASSETS = load();
+
+    private DiplomaAssets() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @return the file names of all fonts
+     */
+    @Nonnull
+    static List<String> fontNames() {
+        return FONT_NAMES;
+    }
+
+    /**
+     * @return the names of all embedded assets
+     */
+    @Nonnull
+    static List<String> names() {
+        final List<String> result = new ArrayList<>();
+        for (final var fontName : FONT_NAMES) {
+            result.add(FONTS + fontName);
+        }
+        for (final var polarity : List.of("positive", "negative")) {
+            for (int loopIdx = 1; loopIdx <= 9; ++loopIdx) {
+                result.add("/pdf/images/state/" + polarity + "/oe" + loopIdx + ".png");
+            }
+        }
+        // NB: no reference to Candidate.Rank, as that must not be initialized at build time
+        for (final var rank : List.of("bronze", "silver", "gold")) {
+            result.add("/pdf/images/banner/" + rank + ".png");
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static Map<String, byte[]> load() {
+        final Map<String, byte[]> result = new HashMap<>();
+        for (final var name : names()) {
+            try (final InputStream is = DiplomaAssets.class.getResourceAsStream(name)) {
+                if (is != null) {
+                    result.put(name, is.readAllBytes());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(MessageFormat.format("Could not load {0}.", name), e);
+            }
+        }
+        return Map.copyOf(result);
+    }
+
+    /**
+     * @return the font with the given file name, as contents of its TrueType file
+     * @throws IOException if the font does not exist
+     */
+    @Nonnull
+    static byte[] font(String fileName) throws IOException {
+        return bytes(FONTS + fileName);
+    }
+
+    /**
+     * @return the contents of the given resource; the returned array is shared and must not be modified
+     * @throws IOException if the resource does not exist
+     */
+    @Nonnull
+    static byte[] bytes(String resourceName) throws IOException {
+        final var embedded = ASSETS.get(resourceName);
+        if (embedded != null) {
+            return embedded;
+        }
+
+        try (final var is = open(resourceName)) {
+            return is.readAllBytes();
+        }
+    }
+
+    /**
+     * Opens the given resource, served from memory if it is embedded.
+     *
+     * @throws IOException if the resource does not exist
+     */
+    @Nonnull
+    static InputStream open(String resourceName) throws IOException {
+        final var embedded = ASSETS.get(resourceName);
+        if (embedded != null) {
+            return new ByteArrayInputStream(embedded);
+        }
+
+        final InputStream is = DiplomaAssets.class.getResourceAsStream(resourceName);
+        if (is == null) {
+            throw new IOException(MessageFormat.format("Could not load {0}.", resourceName));
+        }
+        return is;
+    }
+
+    /**
+     * @return whether the given resource is served from memory
+     */
+    static boolean isEmbedded(@Nullable String resourceName) {
+        return ASSETS.containsKey(resourceName);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf.diploma;
+
+import at.oevsv.sota.data.domain.Summit;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.lowagie.text.Rectangle;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * The geometry of a diploma format, read from <code>/pdf/layouts/&lt;name&gt;.json</code>: named text regions on the
+ * page (in points, as insets from the page edges) and placements of image elements on the artwork (in pixels of the
+ * artwork at print resolution). A layout is validated once when it is loaded; renderers only bind data to it.
+ *
+ * @author schwingenschloegl
+ */
+final class DiplomaLayout {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder().enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).build();
+
+    private final String name;
+    private final Map<String, Region> regions;
+    @Nullable
+    private final Artwork artwork;
+    private final List<Point> statePositions;
+
+    private DiplomaLayout(String name, Map<String, Region> regions, @Nullable Artwork artwork) {
+        this.name = name;
+        this.regions = Map.copyOf(regions);
+        this.artwork = artwork;
+        this.statePositions = artwork != null && artwork.states() != null ? artwork.states().positions() : List.of();
+    }
+
+    /**
+     * Reads and validates the layout with the given name.
+     *
+     * @param name            name of the layout resource, without extension
+     * @param requiredRegions the regions the renderers of the format will ask for
+     * @param requireArtwork  whether the format places image elements on the artwork
+     * @throws IllegalStateException if the layout is missing or invalid
+     */
+    @Nonnull
+    static DiplomaLayout load(String name, Collection<String> requiredRegions, boolean requireArtwork) {
+        final var resourceName = "/pdf/layouts/" + name + ".json";
+        final Descriptor descriptor;
+        try (final InputStream is = DiplomaLayout.class.getResourceAsStream(resourceName)) {
+            if (is == null) {
+                throw new IllegalStateException(MessageFormat.format("Could not load {0}.", resourceName));
+            }
+            descriptor = MAPPER.readValue(is, Descriptor.class);
+        } catch (IOException e) {
+            throw new IllegalStateException(MessageFormat.format("Could not parse {0}.", resourceName), e);
+        }
+
+        final var regions = Objects.requireNonNullElse(descriptor.regions(), Map.<String, Region>of());
+        for (final var required : requiredRegions) {
+            if (!regions.containsKey(required)) {
+                throw new IllegalStateException(MessageFormat.format("Layout {0} lacks region {1}.", name, required));
+            }
+        }
+        regions.forEach((regionName, region) -> region.validate(name + "." + regionName));
+
+        if (descriptor.artwork() != null) {
+            descriptor.artwork().validate(name);
+        } else if (requireArtwork) {
+            throw new IllegalStateException(MessageFormat.format("Layout {0} lacks the artwork.", name));
+        }
+        return new DiplomaLayout(name, regions, descriptor.artwork());
+    }
+
+    @Nonnull
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the region with the given name, resolved against the page
+     */
+    @Nonnull
+    Rectangle region(String regionName, Rectangle pageSize) {
+        final var region = regions.get(regionName);
+        if (region == null) {
+            throw new IllegalArgumentException(MessageFormat.format("Layout {0} has no region {1}.", name, regionName));
+        }
+        return region.resolve(pageSize);
+    }
+
+    @Nonnull
+    Artwork artwork() {
+        if (artwork == null) {
+            throw new IllegalStateException(MessageFormat.format("Layout {0} has no artwork.", name));
+        }
+        return artwork;
+    }
+
+    /**
+     * @return the position of every state badge, in the order of {@link Summit.State#stateForOrdinal(int)}; empty if
+     * the format has none
+     */
+    @Nonnull
+    List<Point> statePositions() {
+        return statePositions;
+    }
+
+    @RegisterForReflection
+    private record Descriptor(@Nullable Map<String, Region> regions, @Nullable Artwork artwork) {
+    }
+
+    /**
+     * A rectangle on the page; exactly two of the horizontal and two of the vertical properties are given. Offsets are
+     * measured inwards from the respective edge of the page.
+     */
+    @RegisterForReflection
+    record Region(@Nullable Float left, @Nullable Float right, @Nullable Float width,
+                  @Nullable Float top, @Nullable Float bottom, @Nullable Float height) {
+
+        @Nonnull
+        Rectangle resolve(Rectangle page) {
+            final float llx = left != null ? page.getLeft(left) : page.getRight(right) - width;
+            final float urx = right != null ? page.getRight(right) : llx + width;
+            final float ury = top != null ? page.getTop(top) : page.getBottom(bottom) + height;
+            final float lly = bottom != null ? page.getBottom(bottom) : ury - height;
+            return new Rectangle(llx, lly, urx, ury);
+        }
+
+        private void validate(String path) {
+            if (Stream.of(left, right, width).filter(Objects::nonNull).count() != 2) {
+                throw new IllegalStateException(MessageFormat.format("Region {0} needs exactly two of left, right and width.", path));
+            }
+            if (Stream.of(top, bottom, height).filter(Objects::nonNull).count() != 2) {
+                throw new IllegalStateException(MessageFormat.format("Region {0} needs exactly two of top, bottom and height.", path));
+            }
+            if (Stream.of(left, right, width, top, bottom, height).anyMatch(value -> value != null && value < 0.0f)) {
+                throw new IllegalStateException(MessageFormat.format("Region {0} has a negative extent.", path));
+            }
+        }
+    }
+
+    /**
+     * A position on the artwork, i.e. the top left corner of an image element.
+     */
+    @RegisterForReflection
+    record Point(int x, int y) {
+    }
+
+    /**
+     * The state badges, one per state, placed in a row from <code>x</code> with a fixed spacing, their height following
+     * the layout mode between <code>minY</code> and <code>maxY</code>.
+     */
+    @RegisterForReflection
+    record StateRow(int x, int spacing, int minY, int maxY, DefaultImageRenderer.StateLayoutMode mode) {
+
+        /**
+         * @return the position of every badge, from left to right
+         */
+        @Nonnull
+        List<Point> positions() {
+            final int count = Summit.State.values().length;
+            final List<Point> result = new ArrayList<>(count);
+            for (int loopIdx = 0; loopIdx < count; ++loopIdx) {
+                result.add(new Point(x + loopIdx * spacing, mode.heightFor(loopIdx, minY, maxY)));
+            }
+            return List.copyOf(result);
+        }
+    }
+
+    /**
+     * Placements on the artwork; <code>width</code> and <code>height</code> are its size at print resolution.
+     */
+    @RegisterForReflection
+    record Artwork(int width, int height, @Nullable Point banner, @Nullable StateRow states) {
+
+        private void validate(String path) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalStateException(MessageFormat.format("Layout {0} has an empty artwork.", path));
+            }
+            final var points = new ArrayList<Point>();
+            if (banner != null) {
+                points.add(banner);
+            }
+            if (states != null) {
+                if (states.mode() == null || states.spacing() <= 0 || states.minY() > states.maxY()) {
+                    throw new IllegalStateException(MessageFormat.format("Layout {0} has an invalid state row.", path));
+                }
+                points.addAll(states.positions());
+            }
+            for (final var point : points) {
+                if (point.x() < 0 || point.x() >= width || point.y() < 0 || point.y() >= height) {
+                    throw new IllegalStateException(MessageFormat.format("Layout {0} places {1} outside of the artwork.", path, point));
+                }
+            }
+        }
+    }
+}
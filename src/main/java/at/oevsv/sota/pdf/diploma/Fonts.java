@@ -16,6 +16,7 @@
 
 package at.oevsv.sota.pdf.diploma;
 
+import at.oevsv.sota.pdf.RenderTrace;
 import com.lowagie.text.Font;
 import com.lowagie.text.pdf.BaseFont;
 
@@ -28,7 +29,9 @@ final class Fonts {
     }
 
     public static Font loadFont(String resourceName, int size, int style) throws IOException {
-        final var base = BaseFont.createFont("/pdf/fonts/" + resourceName, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+        // NB: parsed fonts are cached by BaseFont; the file is only needed the first time
+        final var base = RenderTrace.phase(RenderTrace.Phase.FONTS, () -> BaseFont.createFont("/pdf/fonts/" + resourceName, BaseFont.IDENTITY_H,
+                BaseFont.EMBEDDED, true, DiplomaAssets.font(resourceName), null));
         return new Font(base, size, style);
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf.diploma;
+
+import at.oevsv.sota.data.api.Candidate;
+import com.ibm.icu.text.RuleBasedNumberFormat;
+
+import javax.annotation.Nonnull;
+import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything the text renderers need to localize a diploma, created once per locale: the message bundle, the date
+ * formatter, the spell-out number formatter and the parsed message formats. Shared by all renderers; the formatters
+ * that are not thread-safe are confined to the calling thread or guarded.
+ *
+ * @author schwingenschloegl
+ */
+final class LocaleContext {
+
+    private static final String BUNDLE_NAME = "pdf.i18n.messages";
+
+    private static final Map<Locale, LocaleContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    private final Locale locale;
+    private final ResourceBundle resourceBundle;
+    private final DateTimeFormatter dateFormatter;
+    private final ThreadLocal<RuleBasedNumberFormat> spellOutFormat;
+    private final MessageFormat numericFormat;
+    private final Map<Candidate.Category, List<MessageFormat>> bodyFormats = new ConcurrentHashMap<>();
+
+    private LocaleContext(Locale locale) {
+        this.locale = Objects.requireNonNull(locale);
+        this.resourceBundle = ResourceBundle.getBundle(BUNDLE_NAME, locale, ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_PROPERTIES));
+        this.dateFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(locale);
+        // NB: expensive to create, but not thread-safe
+        this.spellOutFormat = ThreadLocal.withInitial(() -> new RuleBasedNumberFormat(locale, RuleBasedNumberFormat.SPELLOUT));
+        this.numericFormat = new MessageFormat("{0} ({1})");
+    }
+
+    @Nonnull
+    static LocaleContext of(Locale locale) {
+        return CONTEXTS.computeIfAbsent(locale, LocaleContext::new);
+    }
+
+    @Nonnull
+    String getString(String key) {
+        return resourceBundle.getString(key);
+    }
+
+    @Nonnull
+    String formatDate(LocalDate date) {
+        return dateFormatter.format(date);
+    }
+
+    /**
+     * @return the number in digits, followed by the number spelled out, e.g. "20 (twenty)"
+     */
+    @Nonnull
+    String formatNumeric(int number) {
+        final var spelledOut = spellOutFormat.get().format(number);
+        synchronized (numericFormat) {
+            return numericFormat.format(new Object[]{number, spelledOut});
+        }
+    }
+
+    /**
+     * Formats the body text of a diploma of the given category.
+     *
+     * @return the lines of the body
+     */
+    @Nonnull
+    List<String> formatBody(Candidate.Category category, Object... arguments) {
+        final var lines = bodyFormats.computeIfAbsent(category, this::parseBody);
+        return lines.stream().map(line -> {
+            synchronized (line) {
+                return line.format(arguments);
+            }
+        }).toList();
+    }
+
+    @Nonnull
+    private List<MessageFormat> parseBody(Candidate.Category category) {
+        final var pattern = getString("diploma.body." + category.name().toLowerCase(Locale.ROOT));
+        // NB: arguments never contain line breaks, so the pattern can be split up front
+        return Arrays.stream(pattern.split("\n")).map(line -> new MessageFormat(line, locale)).toList();
+    }
+}
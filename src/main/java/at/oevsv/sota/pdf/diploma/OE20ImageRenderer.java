@@ -16,11 +16,13 @@
 
 package at.oevsv.sota.pdf.diploma;
 
+import at.oevsv.sota.data.api.RenderProfile;
 import at.oevsv.sota.pdf.ImageRenderer;
+import at.oevsv.sota.pdf.Rasters;
 
 import javax.annotation.Nonnull;
-import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Locale;
@@ -29,31 +31,38 @@ import java.util.Objects;
 final class OE20ImageRenderer implements ImageRenderer {
 
     private final Locale locale;
+    private final RenderProfile profile;
     private final boolean debugLayout;
 
-    public OE20ImageRenderer(Locale locale, boolean debugLayout) {
+    public OE20ImageRenderer(Locale locale, RenderProfile profile, boolean debugLayout) {
         this.locale = Objects.requireNonNull(locale);
+        this.profile = Objects.requireNonNull(profile);
         this.debugLayout = debugLayout;
     }
 
     @Override
     public void render(Graphics2D target) throws IOException {
-        // Background Size: 3508 x 2480 px (A4, 300 dpi)
         final var bounds = target.getClipBounds();
+        target.drawImage(renderTemplate(), 0, 0, (int) bounds.getWidth(), (int) bounds.getHeight(), null);
+    }
+
+    @Override
+    public BufferedImage renderTemplate() throws IOException {
+        // Background Size: 3508 x 2480 px (A4, 300 dpi)
         try (final InputStream is = this.getClass().getResourceAsStream(backgroundResource())) {
             if (is != null) {
-                final var background = ImageIO.read(is);
+                final var artwork = Rasters.read(is, profile.getScale());
 
                 if (debugLayout) {
-                    final var graphics = background.createGraphics();
+                    final var graphics = artwork.createGraphics();
                     try {
-                        renderGrid(graphics, background.getWidth(), background.getHeight());
+                        renderGrid(graphics, artwork.width(), artwork.height());
                     } finally {
                         graphics.dispose();
                     }
                 }
 
-                target.drawImage(background, 0, 0, (int) bounds.getWidth(), (int) bounds.getHeight(), null);
+                return artwork.image();
             } else {
                 throw new IOException("Could not load background.");
             }
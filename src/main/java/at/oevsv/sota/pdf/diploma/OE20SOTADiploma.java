@@ -21,6 +21,7 @@ import at.oevsv.sota.data.api.Generation;
 import at.oevsv.sota.pdf.DiplomaGenerator;
 import at.oevsv.sota.pdf.ImageRenderer;
 import at.oevsv.sota.pdf.TextRenderer;
+import io.quarkus.runtime.Startup;
 import jakarta.enterprise.context.ApplicationScoped;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -30,6 +31,7 @@ import java.util.Locale;
 /**
  * Generating special OE20SOTA diploma.
  */
+@Startup
 @ApplicationScoped
 final class OE20SOTADiploma implements DiplomaGenerator {
 
@@ -39,6 +41,8 @@ final class OE20SOTADiploma implements DiplomaGenerator {
     @ConfigProperty(name = "diploma.debug.layout", defaultValue = "false")
     boolean debugLayout;
 
+    private final DiplomaLayout layout = DiplomaLayout.load("oe20sota", OE20TextRenderer.REGIONS, false);
+
     @Override
     public boolean canHandle(Generation generation) {
         return generation.getCandidate().category() == Candidate.Category.OE20SOTA;
@@ -65,11 +69,11 @@ final class OE20SOTADiploma implements DiplomaGenerator {
 
     @Override
     public ImageRenderer createImageRenderer(Generation generation) {
-        return new OE20ImageRenderer(generation.getLocale(), debugLayout);
+        return new OE20ImageRenderer(generation.getLocale(), generation.getProfile(), debugLayout);
     }
 
     @Override
     public TextRenderer createTextRenderer(Generation generation) {
-        return new OE20TextRenderer(generation, diplomaManager, debugLayout, () -> idFor(generation));
+        return new OE20TextRenderer(layout, generation, diplomaManager, debugLayout, () -> idFor(generation));
     }
 }
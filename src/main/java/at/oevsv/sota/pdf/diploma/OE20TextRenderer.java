@@ -24,66 +24,73 @@ import com.lowagie.text.Font;
 import com.lowagie.text.Paragraph;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.ColumnText;
-import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.pdf.PdfContentByte;
 
+import javax.annotation.Nonnull;
 import java.awt.*;
 import java.io.IOException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
 import java.util.Objects;
-import java.util.ResourceBundle;
+import java.util.Set;
 
 final class OE20TextRenderer implements TextRenderer {
 
+    /**
+     * The regions of the {@link DiplomaLayout} this renderer writes into.
+     */
+    static final Set<String> REGIONS = Set.of("name", "manager", "info");
+
+    private final DiplomaLayout layout;
     private final Generation generation;
     private final String diplomaManager;
     private final boolean debugLayout;
-    private final ResourceBundle resourceBundle;
+    private final LocaleContext localeContext;
     private final DiplomaIdGenerator idGenerator;
 
-    public OE20TextRenderer(Generation generation, String diplomaManager, boolean debugLayout, DiplomaIdGenerator idGenerator) {
+    public OE20TextRenderer(DiplomaLayout layout, Generation generation, String diplomaManager, boolean debugLayout, DiplomaIdGenerator idGenerator) {
+        this.layout = Objects.requireNonNull(layout);
         this.generation = Objects.requireNonNull(generation);
         this.diplomaManager = Objects.requireNonNull(diplomaManager);
         this.debugLayout = debugLayout;
-        this.resourceBundle = ResourceBundle.getBundle("pdf.i18n.messages", generation.getLocale(), ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_PROPERTIES));
+        this.localeContext = LocaleContext.of(generation.getLocale());
         this.idGenerator = Objects.requireNonNull(idGenerator);
     }
 
     @Override
-    public void writeText(PdfWriter writer) throws IOException {
-        final var consolas = Fonts.loadFont("consola.ttf", 8, Font.NORMAL);
-        consolas.setColor(new Color(200, 200, 200));
-        writeDiplomaManager(writer, consolas);
+    public void writeTemplateText(PdfContentByte canvas, Rectangle pageSize) throws IOException {
+        writeDiplomaManager(canvas, pageSize, consolas());
+    }
 
+    @Override
+    public void stampText(PdfContentByte canvas, Rectangle pageSize) throws IOException {
         final var diplomaId = idGenerator.generateId();
-        writeDiplomaInfo(writer, consolas, LocalDate.now(), diplomaId);
+        writeDiplomaInfo(canvas, pageSize, consolas(), LocalDate.now(), diplomaId);
 
         final var copperplateGothic = Fonts.loadFont("tiffanygtcc.ttf", 40, Font.BOLD);
         copperplateGothic.setColor(new Color(254, 253, 3));
-        writeMainBox(writer, copperplateGothic);
+        writeMainBox(canvas, pageSize, copperplateGothic);
+    }
+
+    @Nonnull
+    private static Font consolas() throws IOException {
+        final var consolas = Fonts.loadFont("consola.ttf", 8, Font.NORMAL);
+        consolas.setColor(new Color(200, 200, 200));
+        return consolas;
     }
 
-    private void writeDiplomaManager(PdfWriter writer, Font font) {
+    private void writeDiplomaManager(PdfContentByte canvas, Rectangle pageSize, Font font) {
         final var paragraph = new Paragraph();
         paragraph.setAlignment(Element.ALIGN_CENTER);
         paragraph.setMultipliedLeading(1.1f);
-        paragraph.add(new Chunk(resourceBundle.getString("diploma.manager.label"), font));
+        paragraph.add(new Chunk(localeContext.getString("diploma.manager.label"), font));
         paragraph.add(Chunk.NEWLINE);
         paragraph.add(new Chunk(diplomaManager, font));
 
-        final var bounds = writer.getPageSize();
-        final var llx = bounds.getLeft(20.0f);
-        // NB: 100.0f is the top line of the box; subtracting a bit because vertical alignment does not work properly
-        final var lly = bounds.getBottom(100.0f - 35.0f);
-        final var urx = bounds.getLeft(140.0f);
-        final var ury = bounds.getBottom(25.0f);
-
-        writeColumn(writer, paragraph, new Rectangle(llx, lly, urx, ury));
+        writeColumn(canvas, paragraph, layout.region("manager", pageSize));
     }
 
-    private void writeColumn(PdfWriter writer, Paragraph paragraph, Rectangle bounds) {
-        ColumnText ct = new ColumnText(writer.getDirectContent());
+    private void writeColumn(PdfContentByte canvas, Paragraph paragraph, Rectangle bounds) {
+        ColumnText ct = new ColumnText(canvas);
         ct.setAlignment(Element.ALIGN_MIDDLE);
         ct.addElement(paragraph);
 
@@ -95,45 +102,31 @@ final class OE20TextRenderer implements TextRenderer {
         ct.go();
 
         if (debugLayout) {
-            debugRectangle(writer, llx, lly, urx, ury);
+            debugRectangle(canvas, llx, lly, urx, ury);
         }
     }
 
-    private static void debugRectangle(PdfWriter writer, float llx, float lly, float urx, float ury) {
-        final var cb = writer.getDirectContent();
+    private static void debugRectangle(PdfContentByte cb, float llx, float lly, float urx, float ury) {
         cb.setLineWidth(2.0f);
         cb.rectangle(llx, lly, urx - llx, ury - lly);
         cb.stroke();
     }
 
-    private void writeDiplomaInfo(PdfWriter writer, Font font, LocalDate date, String diplomaId) {
+    private void writeDiplomaInfo(PdfContentByte canvas, Rectangle pageSize, Font font, LocalDate date, String diplomaId) {
         final var paragraph = new Paragraph();
         paragraph.setAlignment(Element.ALIGN_CENTER);
         paragraph.setMultipliedLeading(1.1f);
-        paragraph.add(new Chunk(resourceBundle.getString("diploma.id.label"), font));
+        paragraph.add(new Chunk(localeContext.getString("diploma.id.label"), font));
         paragraph.add(new Chunk(" " + diplomaId, font));
         paragraph.add(Chunk.NEWLINE);
-        paragraph.add(new Chunk(resourceBundle.getString("diploma.date.label"), font));
-        final var formattedDate = DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(generation.getLocale()).format(date);
+        paragraph.add(new Chunk(localeContext.getString("diploma.date.label"), font));
+        final var formattedDate = localeContext.formatDate(date);
         paragraph.add(new Chunk(" " + formattedDate, font));
 
-        final var bounds = writer.getPageSize();
-        final var llx = bounds.getRight(140.0f);
-        // NB: 100.0f is the top line of the box; subtracting a bit because vertical alignment does not work properly
-        final var lly = bounds.getBottom(100.0f - 35.0f);
-        final var urx = bounds.getRight(20.0f);
-        final var ury = bounds.getBottom(25.0f);
-
-        writeColumn(writer, paragraph, new Rectangle(llx, lly, urx, ury));
+        writeColumn(canvas, paragraph, layout.region("info", pageSize));
     }
 
-    private void writeMainBox(PdfWriter writer, Font highlightFont) {
-        final var bounds = writer.getPageSize();
-        final var llx = bounds.getLeft(220.0f);
-        final var lly = bounds.getTop(170.0f + 4 * 25.0f);
-        final var urx = bounds.getRight(220.0f);
-        final var ury = bounds.getBottom(170.0f + 1.25f * 25.0f);
-
+    private void writeMainBox(PdfContentByte canvas, Rectangle pageSize, Font highlightFont) {
         final var name = new Paragraph();
         name.setAlignment(Element.ALIGN_CENTER);
         name.setMultipliedLeading(1.1f);
@@ -143,6 +136,6 @@ final class OE20TextRenderer implements TextRenderer {
         final Font smaller = new Font(highlightFont);
         smaller.setSize(22);
         name.add(new Chunk(generation.getRequester().name, smaller));
-        writeColumn(writer, name, new Rectangle(llx, lly, urx, ury));
+        writeColumn(canvas, name, layout.region("name", pageSize));
     }
 }
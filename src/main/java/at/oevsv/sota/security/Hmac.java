@@ -16,29 +16,100 @@
 
 package at.oevsv.sota.security;
 
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import javax.annotation.Nullable;
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
-import jakarta.xml.bind.DatatypeConverter;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
- * Handling of HMAC. A key is generated once per VM start. Signed payloads are thus accepted only within the same VM
- * life-cycle. (Re-)starting the application invalidates all previous signatures.
+ * Handling of HMAC. The keys are configured as <code>hmac.keys</code>, a list of <code>&lt;id&gt;:&lt;base64&gt;</code>
+ * entries, of which <code>hmac.active-key</code> (by default the first one) signs. Every instance sharing the keys
+ * accepts the signatures of the others; keys are rotated by adding the new one, activating it, and removing the old
+ * one once its signatures are no longer needed.
+ * <p>
+ * Without configured keys, a key is generated once per VM start. Signed payloads are thus accepted only within the
+ * same VM life-cycle. (Re-)starting the application invalidates all previous signatures.
  */
 public final class Hmac {
 
     private static final String ALGORITHM = "HmacSHA256";
 
-    private static final class Holder {
+    /**
+     * The ID of the key generated if none is configured.
+     */
+    static final String GENERATED_KEY_ID = "vm";
+
+    private static final int MINIMUM_KEY_LENGTH = 32;
+    private static final Pattern KEY_ID = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+    private static final char KEY_ID_SEPARATOR = ':';
+
+    /**
+     * The keys by their ID, and the ID of the one signing.
+     */
+    record KeySet(String active, Map<String, SecretKey> keys) {
+
+        /**
+         * @param entries   the configured keys as <code>&lt;id&gt;:&lt;base64&gt;</code>; a key is generated if there are none
+         * @param activeKey the ID of the key signing; the first one if <code>null</code>
+         * @throws IllegalStateException if the configuration is invalid
+         */
+        static KeySet of(List<String> entries, @Nullable String activeKey) {
+            if (entries.isEmpty()) {
+                return new KeySet(GENERATED_KEY_ID, Map.of(GENERATED_KEY_ID, generateKey()));
+            }
+
+            final Map<String, SecretKey> keys = new LinkedHashMap<>();
+            for (final var entry : entries) {
+                final int separator = entry.indexOf(KEY_ID_SEPARATOR);
+                final var id = separator > 0 ? entry.substring(0, separator).strip() : "";
+                if (!KEY_ID.matcher(id).matches()) {
+                    throw new IllegalStateException("HMAC keys must be given as <id>:<base64>, with an ID of letters, digits, '-' or '_'");
+                }
+
+                final byte[] material;
+                try {
+                    material = Base64.getDecoder().decode(entry.substring(separator + 1).strip());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException("HMAC key " + id + " is not valid Base64", e);
+                }
+                if (material.length < MINIMUM_KEY_LENGTH) {
+                    throw new IllegalStateException("HMAC key " + id + " must have at least " + MINIMUM_KEY_LENGTH + " bytes");
+                }
+                if (keys.put(id, new SecretKeySpec(material, ALGORITHM)) != null) {
+                    throw new IllegalStateException("HMAC key " + id + " is configured more than once");
+                }
+            }
 
-        public static final SecretKey KEY;
+            final var active = activeKey != null ? activeKey : keys.keySet().iterator().next();
+            if (!keys.containsKey(active)) {
+                throw new IllegalStateException("Active HMAC key " + active + " is not configured");
+            }
+            return new KeySet(active, Map.copyOf(keys));
+        }
 
-        static {
+        private static SecretKey generateKey() {
             try {
-                KEY = KeyGenerator.getInstance(ALGORITHM).generateKey();
+                return KeyGenerator.getInstance(ALGORITHM).generateKey();
             } catch (NoSuchAlgorithmException e) {
                 // There's something seriously wrong with the platform's security provider. We cannot run here!
                 throw new AssertionError(e);
@@ -46,13 +117,238 @@ public final class Hmac {
         }
     }
 
+    private static volatile KeySet keySet;
+
+    /**
+     * Loads the configured keys on first use; {@link HmacKeyCheck} does so on startup, so that invalid keys prevent
+     * the application from starting instead of failing the first signature.
+     *
+     * @throws IllegalStateException if the configuration is invalid; it is loaded again on the next call
+     */
+    static KeySet keys() {
+        var loaded = keySet;
+        if (loaded == null) {
+            synchronized (Hmac.class) {
+                loaded = keySet;
+                if (loaded == null) {
+                    final var config = ConfigProvider.getConfig();
+                    loaded = KeySet.of(config.getOptionalValues("hmac.keys", String.class).orElse(List.of()),
+                            config.getOptionalValue("hmac.active-key", String.class).orElse(null));
+                    keySet = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
     private Hmac() {
         throw new AssertionError();
     }
 
+    /**
+     * Writes the data to authenticate.
+     */
+    @FunctionalInterface
+    public interface Payload {
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    /**
+     * A MAC initialized with the key, and buffers for its result; used by one thread at a time, as neither is
+     * thread-safe (see {@link SignerPool}).
+     */
+    private static final class Signer {
+
+        private final SecretKey key;
+        private final Mac mac;
+        private final byte[] digest;
+        private final char[] hex;
+
+        Signer(SecretKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+            this.key = key;
+            this.mac = Mac.getInstance(ALGORITHM);
+            this.mac.init(key);
+            this.digest = new byte[mac.getMacLength()];
+            this.hex = new char[2 * digest.length];
+        }
+
+        /**
+         * Finishes the MAC, which resets it for the next calculation.
+         */
+        String finish() {
+            try {
+                mac.doFinal(digest, 0);
+            } catch (ShortBufferException e) {
+                throw new AssertionError(e);
+            }
+            return hex();
+        }
+
+        /**
+         * Calculates the MAC of the payload, leaving the MAC reset in any case.
+         */
+        String calculate(Payload payload) throws IOException {
+            try {
+                payload.writeTo(new MacOutputStream(mac));
+            } catch (IOException | RuntimeException e) {
+                mac.reset();
+                throw e;
+            }
+            return finish();
+        }
+
+        private String hex() {
+            for (int index = 0; index < digest.length; ++index) {
+                hex[2 * index] = HEX_DIGITS[(digest[index] >> 4) & 0xF];
+                hex[2 * index + 1] = HEX_DIGITS[digest[index] & 0xF];
+            }
+            return new String(hex);
+        }
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Idle signers of a key, borrowed for a single calculation. Unlike a thread-local cache, this also works for
+     * requests on virtual threads, which are never reused. At most {@link #MAX_IDLE} signers are kept; more are only
+     * created under contention and dropped when given back.
+     */
+    private static final class SignerPool {
+
+        private static final int MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+
+        private final Queue<Signer> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        Signer borrow(SecretKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+            Signer signer;
+            while ((signer = idle.poll()) != null) {
+                idleCount.decrementAndGet();
+                // NB: never sign with a key other than the one asked for, even if it has the same ID
+                if (signer.key.equals(key)) {
+                    return signer;
+                }
+            }
+            return new Signer(key);
+        }
+
+        void giveBack(Signer signer) {
+            if (idleCount.incrementAndGet() <= MAX_IDLE) {
+                idle.offer(signer);
+            } else {
+                idleCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Signer pools by key ID.
+     */
+    private static final Map<String, SignerPool> SIGNERS = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    private interface Calculation<T, E extends Exception> {
+        T apply(Signer signer) throws E;
+    }
+
+    private static <T, E extends Exception> T withSigner(String keyId, SecretKey key, Calculation<T, E> calculation)
+            throws NoSuchAlgorithmException, InvalidKeyException, E {
+        final var pool = SIGNERS.computeIfAbsent(keyId, id -> new SignerPool());
+        final var signer = pool.borrow(key);
+        try {
+            return calculation.apply(signer);
+        } finally {
+            pool.giveBack(signer);
+        }
+    }
+
+    private static <T, E extends Exception> T withActiveSigner(Calculation<T, E> calculation)
+            throws NoSuchAlgorithmException, InvalidKeyException, E {
+        final var keys = keys();
+        return withSigner(keys.active(), keys.keys().get(keys.active()), calculation);
+    }
+
     public static String calculate(String data) throws NoSuchAlgorithmException, InvalidKeyException {
-        Mac mac = Mac.getInstance(ALGORITHM);
-        mac.init(Holder.KEY);
-        return DatatypeConverter.printHexBinary(mac.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+        return calculate(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the HMAC by the active key as upper-case hex digits
+     */
+    public static String calculate(byte[] data) throws NoSuchAlgorithmException, InvalidKeyException {
+        return withActiveSigner(signer -> {
+            signer.mac.update(data);
+            return signer.finish();
+        });
+    }
+
+    /**
+     * Consumes the remaining bytes of the buffer.
+     *
+     * @return the HMAC as upper-case hex digits
+     */
+    public static String calculate(ByteBuffer data) throws NoSuchAlgorithmException, InvalidKeyException {
+        return withActiveSigner(signer -> {
+            signer.mac.update(data);
+            return signer.finish();
+        });
+    }
+
+    /**
+     * Calculates the HMAC of the bytes written by the payload, which are fed to the MAC as they are written instead of
+     * being collected first. Yields the same as {@link #calculate(String)} for the UTF-8 encoding of a string.
+     */
+    public static String calculate(Payload payload) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        return withActiveSigner(signer -> signer.calculate(payload));
+    }
+
+    /**
+     * Signs the payload with the active key (see {@link #calculate(Payload)}).
+     *
+     * @return the signature, consisting of the ID of the key and the HMAC
+     */
+    public static String sign(Payload payload) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        return keys().active() + KEY_ID_SEPARATOR + calculate(payload);
+    }
+
+    /**
+     * Verifies a signature created by {@link #sign(Payload)} with any of the configured keys.
+     *
+     * @return whether the signature is valid for the payload; <code>false</code> if its key is unknown
+     */
+    public static boolean verify(@Nullable String signature, Payload payload) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        final int separator = signature != null ? signature.indexOf(KEY_ID_SEPARATOR) : -1;
+        if (separator < 0) {
+            return false;
+        }
+
+        final var keyId = signature.substring(0, separator);
+        final var key = keys().keys().get(keyId);
+        if (key == null) {
+            return false;
+        }
+
+        final var expected = withSigner(keyId, key, signer -> signer.calculate(payload));
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII),
+                signature.substring(separator + 1).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static final class MacOutputStream extends OutputStream {
+
+        private final Mac mac;
+
+        MacOutputStream(Mac mac) {
+            this.mac = mac;
+        }
+
+        @Override
+        public void write(int b) {
+            mac.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mac.update(b, off, len);
+        }
     }
 }
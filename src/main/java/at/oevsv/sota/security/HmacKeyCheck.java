@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.security;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+/**
+ * Loads the HMAC keys on startup, so that a misconfiguration of <code>hmac.keys</code> or <code>hmac.active-key</code>
+ * fails fast with a clear message instead of failing the first signature.
+ *
+ * @author schwingenschloegl
+ */
+@ApplicationScoped
+class HmacKeyCheck {
+
+    void onStart(@Observes StartupEvent event) {
+        final var keys = Hmac.keys();
+        Log.infof("Signing with HMAC key %s; accepting %d keys", keys.active(), keys.keys().size());
+    }
+}
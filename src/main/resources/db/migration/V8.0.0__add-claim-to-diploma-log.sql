@@ -0,0 +1,5 @@
+ALTER TABLE DiplomaLog
+    ADD claimOwner VARCHAR(64),
+    ADD claimExpiry TIMESTAMP WITH TIME ZONE;
+
+CREATE INDEX idx_diplomalog_pending ON DiplomaLog (id) WHERE reviewMailSent = false;
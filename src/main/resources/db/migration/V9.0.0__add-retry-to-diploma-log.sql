@@ -0,0 +1,8 @@
+ALTER TABLE DiplomaLog
+    ADD attempts INTEGER NOT NULL DEFAULT 0,
+    ADD nextAttempt TIMESTAMP WITH TIME ZONE,
+    ADD lastError VARCHAR(1024),
+    ADD deadLettered BOOLEAN NOT NULL DEFAULT false;
+
+DROP INDEX idx_diplomalog_pending;
+CREATE INDEX idx_diplomalog_pending ON DiplomaLog (id) WHERE reviewMailSent = false AND deadLettered = false;
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota;
+
+import at.oevsv.sota.data.WireMockExtension;
+import at.oevsv.sota.data.persistence.SummitList;
+import at.oevsv.sota.data.persistence.SummitListTestSeam;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+/**
+ * Load test for the blocking endpoints running on virtual threads: fires more concurrent requests than there are
+ * worker threads and checks that every one is served on a virtual thread without pinning its carrier. It does not
+ * measure throughput or heap, nor compare them with running on the worker pool (see ADR 0013).
+ */
+@QuarkusTest
+@QuarkusTestResource(WireMockExtension.class)
+@TestProfile(DiplomaResourceLoadTest.Profile.class)
+final class DiplomaResourceLoadTest {
+
+    private static final int WORKER_THREADS = 4;
+    private static final int REQUESTS = 16 * WORKER_THREADS;
+    private static final String VIRTUAL_THREAD_START = "jdk.VirtualThreadStart";
+    private static final String VIRTUAL_THREAD_PINNED = "jdk.VirtualThreadPinned";
+
+    public static final class Profile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("quarkus.thread-pool.max-threads", Integer.toString(WORKER_THREADS),
+                    "requests.per.minute", Integer.toString(10 * REQUESTS));
+        }
+    }
+
+    @Inject
+    SummitList summitList;
+
+    @TestHTTPResource("/api/diploma/candidates?callsign=OE5JFE")
+    URI candidates;
+
+    @BeforeEach
+    void synchronize() {
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> SummitListTestSeam.isInitialSynchronizationCompleted(summitList));
+    }
+
+    @Test
+    void candidates_concurrentRequestsDoNotPinCarrierThreads() throws IOException {
+        assumeThat(Runtime.version().feature()).as("virtual threads are available").isGreaterThanOrEqualTo(21);
+
+        final List<RecordedEvent> events;
+        try (final var recording = new Recording()) {
+            recording.enable(VIRTUAL_THREAD_START);
+            recording.enable(VIRTUAL_THREAD_PINNED).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            final var client = HttpClient.newHttpClient();
+            final var request = HttpRequest.newBuilder(candidates).timeout(Duration.ofSeconds(30)).build();
+            final var responses = IntStream.range(0, REQUESTS)
+                    .mapToObj(ignored -> client.sendAsync(request, HttpResponse.BodyHandlers.discarding()))
+                    .toList();
+            final var statusCodes = responses.stream()
+                    .map(CompletableFuture::join)
+                    .map(HttpResponse::statusCode)
+                    .toList();
+            assertThat(statusCodes).hasSize(REQUESTS).containsOnly(200);
+
+            recording.stop();
+            final var dump = Files.createTempFile("virtual-threads", ".jfr");
+            try {
+                recording.dump(dump);
+                events = RecordingFile.readAllEvents(dump);
+            } finally {
+                Files.deleteIfExists(dump);
+            }
+        }
+
+        assertThat(events).filteredOn(event -> event.getEventType().getName().equals(VIRTUAL_THREAD_START))
+                .as("requests are served on virtual threads")
+                .hasSizeGreaterThanOrEqualTo(REQUESTS);
+        assertThat(events).filteredOn(event -> event.getEventType().getName().equals(VIRTUAL_THREAD_PINNED))
+                .as("no carrier thread is pinned")
+                .isEmpty();
+    }
+}
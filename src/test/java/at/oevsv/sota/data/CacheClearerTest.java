@@ -16,6 +16,8 @@
 
 package at.oevsv.sota.data;
 
+import io.quarkus.cache.CacheManager;
+import io.quarkus.cache.CaffeineCache;
 import io.quarkus.security.UnauthorizedException;
 import io.quarkus.test.common.QuarkusTestResource;
 import io.quarkus.test.junit.QuarkusTest;
@@ -23,6 +25,10 @@ import io.quarkus.test.security.TestSecurity;
 import jakarta.inject.Inject;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 
@@ -33,9 +39,35 @@ final class CacheClearerTest {
     @Inject
     CacheClearer sut;
 
+    @Inject
+    Rolls rolls;
+
+    @Inject
+    CacheManager cacheManager;
+
+    @Test
+    void refreshingCachesInternallyIsAllowed() {
+        assertThatNoException().isThrownBy(() -> sut.refreshAllCaches());
+    }
+
     @Test
-    void clearingCachesInternallyIsAllowed() {
-        assertThatNoException().isThrownBy(() -> sut.doClearAllCaches());
+    void refreshingRoll_keepsItCached() {
+        final var activators = rolls.activators("0");
+
+        sut.refresh(Rolls.ACTIVATOR_CACHE);
+
+        assertThat(cacheManager.getCache(Rolls.ACTIVATOR_CACHE).orElseThrow().as(CaffeineCache.class).keySet()).containsExactly("0");
+        assertThat(rolls.activators("0")).isEqualTo(activators);
+    }
+
+    @Test
+    void jitter_isStablePerCacheAndWithinWindow() {
+        final var window = Duration.ofMinutes(30L);
+
+        assertThat(CacheClearer.jitter(Rolls.ACTIVATOR_CACHE, window)).isEqualTo(CacheClearer.jitter(Rolls.ACTIVATOR_CACHE, window))
+                .isBetween(Duration.ZERO, window);
+        assertThat(Stream.of(Rolls.ACTIVATOR_CACHE, Rolls.CHASER_CACHE, Rolls.SWL_CACHE).map(name -> CacheClearer.jitter(name, window)).distinct()).hasSize(3);
+        assertThat(CacheClearer.jitter(Rolls.ACTIVATOR_CACHE, Duration.ZERO)).isZero();
     }
 
     @Test
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.vertx.mutiny.redis.client.RedisAPI;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the Redis instance started by the dev services.
+ */
+@QuarkusTest
+@TestProfile(SharedCacheRedisTest.Profile.class)
+final class SharedCacheRedisTest {
+
+    private static final TypeReference<List<String>> STRINGS = new TypeReference<>() {
+    };
+
+    public static final class Profile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("cache.shared.enabled", "true");
+        }
+    }
+
+    @Inject
+    SharedCache sut;
+
+    @Inject
+    RedisAPI redis;
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final String key = UUID.randomUUID().toString();
+
+    private Supplier<List<String>> upstream(String value) {
+        return () -> {
+            fetches.incrementAndGet();
+            return List.of(value);
+        };
+    }
+
+    @Test
+    void roll_isFetchedOnceAndShared() {
+        assertThat(sut.roll("test", key, STRINGS, upstream("first"))).containsExactly("first");
+        assertThat(sut.roll("test", key, STRINGS, upstream("second"))).containsExactly("first");
+
+        assertThat(fetches).hasValue(1);
+        assertThat(redis.exists(List.of(SharedCache.redisKey("test", key))).await().atMost(Duration.ofSeconds(5L)).toInteger()).isEqualTo(1);
+    }
+
+    @Test
+    void logs_expire() {
+        sut.logs("test", key, STRINGS, upstream("first"));
+
+        final var ttl = redis.pttl(SharedCache.redisKey("test", key)).await().atMost(Duration.ofSeconds(5L)).toLong();
+        assertThat(ttl).isPositive().isLessThanOrEqualTo(Duration.ofMinutes(10L).toMillis());
+    }
+
+    @Test
+    void reloadRoll_takesOverRecentSnapshot() {
+        sut.roll("test", key, STRINGS, upstream("first"));
+
+        assertThat(sut.reloadRoll("test", key, STRINGS, true, upstream("second"))).containsExactly("first");
+        assertThat(fetches).hasValue(1);
+    }
+
+    @Test
+    void reloadRoll_withoutReuse_fetchesAndSharesIt() {
+        sut.roll("test", key, STRINGS, upstream("first"));
+
+        assertThat(sut.reloadRoll("test", key, STRINGS, false, upstream("second"))).containsExactly("second");
+        assertThat(sut.roll("test", key, STRINGS, upstream("third"))).containsExactly("second");
+        assertThat(fetches).hasValue(2);
+    }
+}
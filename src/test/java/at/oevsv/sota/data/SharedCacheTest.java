@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data;
+
+import at.oevsv.sota.data.domain.ActivatorLog;
+import at.oevsv.sota.data.domain.Summit;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class SharedCacheTest {
+
+    private static final TypeReference<Collection<ActivatorLog>> ACTIVATOR_LOGS = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void snapshot_roundTrips() throws IOException {
+        final var logs = List.of(new ActivatorLog(new Summit("OE/OO-073", "Schoberstein"), 12, 4, LocalDate.of(2023, 5, 1)));
+        final var written = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        final var snapshot = SharedCache.decode(objectMapper, SharedCache.encode(objectMapper, logs, written), ACTIVATOR_LOGS);
+
+        assertThat(snapshot).isNotNull();
+        assertThat(snapshot.value()).containsExactlyElementsOf(logs);
+        assertThat(snapshot.written()).isEqualTo(written);
+    }
+
+    @Test
+    void snapshot_ofOtherFormat_isIgnored() throws IOException {
+        final var payload = SharedCache.encode(objectMapper, List.of(), Instant.now());
+        payload[0] = (byte) (SharedCache.FORMAT + 1);
+
+        assertThat(SharedCache.decode(objectMapper, payload, ACTIVATOR_LOGS)).isNull();
+    }
+
+    @Test
+    void redisKey_containsFormat() {
+        assertThat(SharedCache.redisKey(Rolls.ACTIVATOR_CACHE, "0")).isEqualTo("sota:l2:v" + SharedCache.FORMAT + ":activator-cache:0");
+    }
+}
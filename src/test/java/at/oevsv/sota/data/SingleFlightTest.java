@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+final class SingleFlightTest {
+
+    private static final int CALLERS = 4;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight sut = new SingleFlight(registry);
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentIdenticalCalls_shareOneFetch() throws Exception {
+        final var fetches = new AtomicInteger();
+        final var release = new CountDownLatch(1);
+        final var futures = IntStream.range(0, CALLERS)
+                .mapToObj(i -> executor.submit(() -> sut.call("logs", "12345", () -> {
+                    fetches.incrementAndGet();
+                    awaitQuietly(release);
+                    return List.of("log");
+                })))
+                .toList();
+
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (final Future<List<String>> future : futures) {
+            assertThat(future.get(5L, TimeUnit.SECONDS)).containsExactly("log");
+        }
+        assertThat(fetches).hasValue(1);
+    }
+
+    @Test
+    void failure_isSharedWithWaitingCallers() throws Exception {
+        final var started = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        final var first = executor.submit(() -> sut.call("logs", "12345", () -> {
+            started.countDown();
+            awaitQuietly(release);
+            throw new IllegalStateException("upstream down");
+        }));
+        assertThat(started.await(5L, TimeUnit.SECONDS)).isTrue();
+        final var fetches = new AtomicInteger();
+        final var second = executor.submit(() -> sut.call("logs", "12345", fetches::incrementAndGet));
+
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertThatThrownBy(() -> first.get(5L, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> second.get(5L, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(fetches).hasValue(0);
+    }
+
+    @Test
+    void completedCall_isNotKept() {
+        final var fetches = new AtomicInteger();
+
+        assertThat(sut.call("logs", "12345", fetches::incrementAndGet)).isEqualTo(1);
+        assertThat(sut.call("logs", "12345", fetches::incrementAndGet)).isEqualTo(2);
+        assertThatIllegalStateException().isThrownBy(() -> sut.call("logs", "12345", () -> {
+            throw new IllegalStateException();
+        }));
+        assertThat(sut.call("logs", "12345", fetches::incrementAndGet)).isEqualTo(3);
+        assertThat(coalesced()).isZero();
+    }
+
+    @Test
+    void differentCalls_areNotCoalesced() {
+        assertThat(sut.call("activator-logs", "12345", () -> sut.call("chaser-logs", "12345", () -> "nested"))).isEqualTo("nested");
+        assertThat(sut.call("logs", "12345", () -> sut.call("logs", "67890", () -> "nested"))).isEqualTo("nested");
+        assertThat(coalesced()).isZero();
+    }
+
+    private double coalesced() {
+        final var counter = registry.find("upstream.calls.coalesced").counter();
+        return counter == null ? 0.0 : counter.count();
+    }
+
+    private void awaitCoalesced(int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (coalesced() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertThat(coalesced()).isEqualTo(count);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data.api;
+
+import at.oevsv.sota.data.domain.Summit;
+import at.oevsv.sota.data.domain.jackson.CanonicalJson;
+import at.oevsv.sota.security.Hmac;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class CanonicalCandidateTest {
+
+    static Stream<Candidate> candidates() {
+        final Map<Summit.State, Long> withNull = new HashMap<>();
+        withNull.put(Summit.State.OE9, 3L);
+        withNull.put(Summit.State.OE2, null);
+        final Map<Summit.State, Long> allStates = Arrays.stream(Summit.State.values())
+                .collect(Collectors.toMap(Function.identity(), state -> (long) state.ordinal() * 1000, (l, r) -> l, () -> new EnumMap<>(Summit.State.class)));
+
+        return Stream.of(
+                new Candidate("OE5IDT", "123", Candidate.Category.CHASER, Candidate.Rank.NONE, Map.of(Summit.State.OE3, 4L, Summit.State.OE1, 1L)),
+                new Candidate("OE5IDT", "123", Candidate.Category.S2S, Candidate.Rank.GOLD, Map.of()),
+                new Candidate("OE5IDT", "123", Candidate.Category.ACTIVATOR, Candidate.Rank.SILVER, allStates),
+                new Candidate("OE5IDT", "123", Candidate.Category.OE20SOTA, Candidate.Rank.BRONZE, withNull),
+                new Candidate(null, null, null, null, null),
+                new Candidate("OE5IDT/P \"quoted\" \\ back\tslash\n", "Schwingenschlögl € 🏔 \u0001", Candidate.Category.CHASER, Candidate.Rank.GOLD,
+                        Map.of(Summit.State.OE7, Long.MAX_VALUE, Summit.State.OE4, Long.MIN_VALUE)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("candidates")
+    void write_isByteIdenticalToCanonicalJson(Candidate candidate) throws IOException {
+        final var expected = CanonicalJson.calculate(candidate);
+        assertThat(expected).isNotNull();
+
+        final var os = new ByteArrayOutputStream();
+        CanonicalCandidate.write(candidate, os);
+
+        assertThat(os.toByteArray()).isEqualTo(expected.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @ParameterizedTest
+    @MethodSource("candidates")
+    void signature_isTheSameAsForCanonicalJson(Candidate candidate) throws Exception {
+        final var signed = SignedCandidate.sign(candidate);
+        final var canonical = CanonicalJson.calculate(candidate).getBytes(StandardCharsets.UTF_8);
+
+        assertThat(signed.signature()).endsWith(":" + Hmac.calculate(canonical));
+        assertThat(Hmac.verify(signed.signature(), os -> os.write(canonical))).isTrue();
+    }
+}
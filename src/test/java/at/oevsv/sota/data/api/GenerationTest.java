@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.data.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class GenerationTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void profile_defaultsToPrint() throws IOException {
+        final var generation = objectMapper.readValue("{}", Generation.class);
+
+        assertThat(generation.getProfile()).isEqualTo(RenderProfile.PRINT);
+        assertThat(generation.getQuality()).isEqualTo(RenderProfile.PRINT.getQuality());
+    }
+
+    @Test
+    void profile_nullFallsBackToPrint() throws IOException {
+        final var generation = objectMapper.readValue("{\"profile\": null}", Generation.class);
+
+        assertThat(generation.getProfile()).isEqualTo(RenderProfile.PRINT);
+        assertThat(generation.getQuality()).isEqualTo(RenderProfile.PRINT.getQuality());
+    }
+
+    @Test
+    void quality_overridesProfile() throws IOException {
+        final var generation = objectMapper.readValue("{\"profile\": \"PREVIEW\", \"quality\": 0.5}", Generation.class);
+
+        assertThat(generation.getProfile()).isEqualTo(RenderProfile.PREVIEW);
+        assertThat(generation.getQuality()).isEqualTo(0.5f);
+    }
+}
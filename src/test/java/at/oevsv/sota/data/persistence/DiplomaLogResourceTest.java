@@ -17,18 +17,47 @@
 package at.oevsv.sota.data.persistence;
 
 import at.oevsv.sota.ValidationUtil;
+import at.oevsv.sota.data.api.Candidate;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.security.TestSecurity;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.NotFoundException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.assertj.core.api.Assumptions.assumeThat;
 
+@QuarkusTest
 final class DiplomaLogResourceTest {
 
+    private static final String OWNER = "instance-a";
+    private static final String OTHER_OWNER = "instance-b";
+    private static final Duration LEASE = Duration.ofMinutes(15L);
+
+    @Inject
+    DiplomaLogResource sut;
+
+    @BeforeEach
+    void clear() {
+        sut.deleteAll();
+    }
+
     static Stream<Arguments> callSigns() {
         // @formatter:off
         return Stream.of(
@@ -64,4 +93,196 @@ final class DiplomaLogResourceTest {
         assertThat(DiplomaLogResource.canonicalCallSign("")).isNull();
         assertThat(DiplomaLogResource.canonicalCallSign("   ")).isNull();
     }
+
+    @Test
+    void claimPending_ownersNeverGetSameRows() {
+        final var ids = createPending(5);
+
+        final var first = idsOf(sut.claimPending(OWNER, 3, LEASE));
+        final var second = idsOf(sut.claimPending(OTHER_OWNER, 3, LEASE));
+
+        assertThat(first).hasSize(3);
+        assertThat(second).hasSize(2).doesNotContainAnyElementsOf(first);
+        assertThat(sut.claimPending(OWNER, 3, LEASE)).isEmpty();
+        assertThat(find(ids.get(0)).getClaimOwner()).isEqualTo(OWNER);
+        assertThat(find(ids.get(4)).getClaimOwner()).isEqualTo(OTHER_OWNER);
+    }
+
+    @Test
+    void claimPending_concurrentOwnersNeverGetSameRows() {
+        final var ids = createPending(20);
+        final var start = new CountDownLatch(1);
+
+        final var claims = Stream.of(OWNER, OTHER_OWNER)
+                .map(owner -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await(5L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return idsOf(sut.claimPending(owner, 20, LEASE));
+                }))
+                .toList();
+        start.countDown();
+        final var first = claims.get(0).join();
+        final var second = claims.get(1).join();
+
+        assertThat(first).doesNotContainAnyElementsOf(second);
+        assertThat(first.size() + second.size()).isLessThanOrEqualTo(ids.size());
+    }
+
+    @Test
+    void claimPending_reclaimsExpiredClaims() {
+        final var id = createPending(1).get(0);
+        assertThat(idsOf(sut.claimPending(OWNER, 10, Duration.ofMinutes(-1L)))).containsExactly(id);
+
+        assertThat(idsOf(sut.claimPending(OTHER_OWNER, 10, LEASE))).containsExactly(id);
+        assertThat(find(id).getClaimOwner()).isEqualTo(OTHER_OWNER);
+    }
+
+    @Test
+    void claimPending_skipsRowsWaitingForRetryOrDeadLettered() {
+        final var ids = createPending(3);
+        sut.claimPending(OWNER, 2, LEASE);
+        sut.recordFailedAttempt(ids.get(0), OWNER, "retry later", 8, attempts -> Duration.ofHours(1L));
+        sut.recordFailedAttempt(ids.get(1), OWNER, "give up", 1, attempts -> Duration.ofHours(1L));
+        assertThat(find(ids.get(1)).isDeadLettered()).isTrue();
+
+        assertThat(idsOf(sut.claimPending(OTHER_OWNER, 10, LEASE))).containsExactly(ids.get(2));
+    }
+
+    @Test
+    void releaseClaims_onlyTouchesOwnRows() {
+        final var ids = createPending(2);
+        sut.claimPending(OWNER, 1, LEASE);
+        sut.claimPending(OTHER_OWNER, 1, LEASE);
+
+        sut.releaseClaims(ids, OWNER);
+
+        assertThat(find(ids.get(0)).getClaimOwner()).isNull();
+        assertThat(find(ids.get(1)).getClaimOwner()).isEqualTo(OTHER_OWNER);
+        assertThat(idsOf(sut.claimPending(OWNER, 10, LEASE))).containsExactly(ids.get(0));
+    }
+
+    @Test
+    void markReviewMailSent_onlyMarksOwnRows() {
+        final var ids = createPending(2);
+        sut.claimPending(OWNER, 1, LEASE);
+        sut.claimPending(OTHER_OWNER, 1, LEASE);
+
+        assertThat(sut.markReviewMailSent(ids, OWNER)).isEqualTo(1);
+
+        assertThat(find(ids.get(0)).isReviewMailSent()).isTrue();
+        assertThat(find(ids.get(0)).getClaimOwner()).isNull();
+        assertThat(find(ids.get(1)).isReviewMailSent()).isFalse();
+        assertThat(find(ids.get(1)).getClaimOwner()).isEqualTo(OTHER_OWNER);
+    }
+
+    @Test
+    void renewClaims_failsOnceClaimedByAnotherOwner() {
+        final var ids = createPending(2);
+        sut.claimPending(OWNER, 2, Duration.ofMinutes(-1L));
+        assertThat(sut.renewClaims(ids, OWNER, LEASE)).isFalse();
+
+        sut.claimPending(OTHER_OWNER, 1, LEASE);
+        sut.claimPending(OWNER, 1, LEASE);
+
+        assertThat(sut.renewClaims(List.of(ids.get(1)), OWNER, LEASE)).isTrue();
+        assertThat(sut.renewClaims(ids, OWNER, LEASE)).isFalse();
+        assertThat(find(ids.get(1)).getClaimExpiry()).isAfter(Instant.now().plus(LEASE).minus(Duration.ofMinutes(1L)));
+    }
+
+    @Test
+    void recordFailedAttempt_schedulesNextAttempt() {
+        final var id = createPending(1).get(0);
+        sut.claimPending(OWNER, 1, LEASE);
+
+        final var before = Instant.now();
+        assertThat(sut.recordFailedAttempt(id, OWNER, "connection refused", 3, attempts -> Duration.ofMinutes(5L * attempts))).isFalse();
+
+        final var entry = find(id);
+        assertThat(entry.getAttempts()).isEqualTo(1);
+        assertThat(entry.getLastError()).isEqualTo("connection refused");
+        assertThat(entry.getNextAttempt()).isBetween(before.plus(Duration.ofMinutes(5L)), Instant.now().plus(Duration.ofMinutes(5L)));
+        assertThat(entry.isDeadLettered()).isFalse();
+        assertThat(entry.getClaimOwner()).isNull();
+    }
+
+    @Test
+    @TestSecurity(user = "test", roles = "admin")
+    void recordFailedAttempt_deadLettersAtMaxAttempts() {
+        final var id = createPending(1).get(0);
+        for (int attempt = 1; attempt <= 3; ++attempt) {
+            assertThat(idsOf(sut.claimPending(OWNER, 1, LEASE))).containsExactly(id);
+            final boolean deadLettered = sut.recordFailedAttempt(id, OWNER, "attempt " + attempt, 3, attempts -> Duration.ZERO);
+            assertThat(deadLettered).as("dead-lettered after attempt %d", attempt).isEqualTo(attempt == 3);
+        }
+
+        final var entry = find(id);
+        assertThat(entry.getAttempts()).isEqualTo(3);
+        assertThat(entry.getLastError()).isEqualTo("attempt 3");
+        assertThat(entry.getNextAttempt()).isNull();
+        assertThat(idsOf(sut.listDeadLettered())).containsExactly(id);
+        assertThat(sut.claimPending(OWNER, 1, LEASE)).isEmpty();
+    }
+
+    @Test
+    void recordFailedAttempt_ignoresRowsClaimedByAnotherOwner() {
+        final var id = createPending(1).get(0);
+        sut.claimPending(OTHER_OWNER, 1, LEASE);
+
+        assertThat(sut.recordFailedAttempt(id, OWNER, "not mine", 1, attempts -> Duration.ZERO)).isFalse();
+
+        final var entry = find(id);
+        assertThat(entry.getAttempts()).isZero();
+        assertThat(entry.isDeadLettered()).isFalse();
+        assertThat(entry.getClaimOwner()).isEqualTo(OTHER_OWNER);
+    }
+
+    @Test
+    @TestSecurity(user = "test", roles = "admin")
+    void retry_makesDeadLetteredRowClaimableAgain() {
+        final var id = createPending(1).get(0);
+        sut.claimPending(OWNER, 1, LEASE);
+        sut.recordFailedAttempt(id, OWNER, "give up", 1, attempts -> Duration.ZERO);
+        assertThat(sut.claimPending(OWNER, 1, LEASE)).isEmpty();
+
+        final var retried = sut.retry(id);
+
+        assertThat(retried.isDeadLettered()).isFalse();
+        assertThat(retried.getAttempts()).isZero();
+        assertThat(retried.getNextAttempt()).isNull();
+        assertThat(sut.listDeadLettered()).isEmpty();
+        assertThat(idsOf(sut.claimPending(OWNER, 1, LEASE))).containsExactly(id);
+    }
+
+    @Test
+    @TestSecurity(user = "test", roles = "admin")
+    void retry_unknownRow_isNotFound() {
+        assertThatExceptionOfType(NotFoundException.class).isThrownBy(() -> sut.retry(-1L));
+    }
+
+    private static List<Long> createPending(int count) {
+        return QuarkusTransaction.requiringNew().call(() -> IntStream.range(0, count)
+                .mapToObj(index -> {
+                    final var entry = new DiplomaLog();
+                    entry.setCallSign("oe5idt");
+                    entry.setMail("oe5idt@example.org");
+                    entry.setName("Test " + index);
+                    entry.setCategory(Candidate.Category.ACTIVATOR);
+                    entry.setRank(Candidate.Rank.BRONZE);
+                    entry.setCreationDate(LocalDate.now());
+                    entry.persist();
+                    return entry.id;
+                })
+                .toList());
+    }
+
+    private static DiplomaLog find(Long id) {
+        return QuarkusTransaction.requiringNew().call(() -> DiplomaLog.<DiplomaLog>findById(id));
+    }
+
+    private static List<Long> idsOf(List<DiplomaLog> logs) {
+        return logs.stream().map(log -> log.id).toList();
+    }
 }
@@ -18,19 +18,41 @@ package at.oevsv.sota.mail;
 
 import at.oevsv.sota.data.api.Candidate;
 import at.oevsv.sota.data.api.Requester;
+import at.oevsv.sota.data.persistence.DiplomaLog;
+import at.oevsv.sota.data.persistence.DiplomaLogResource;
+import at.oevsv.sota.pdf.RenderingCapacityExceededException;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.mailer.Mail;
 import io.quarkus.mailer.MockMailbox;
+import io.quarkus.test.junit.QuarkusMock;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.security.TestSecurity;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 
 import jakarta.inject.Inject;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @QuarkusTest
 class MailingResourceTest {
@@ -41,9 +63,32 @@ class MailingResourceTest {
     @Inject
     MailingResource sut;
 
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    MailingConfiguration configuration;
+
+    @ConfigProperty(name = "quarkus.mailer.max-pool-size")
+    int mailerPoolSize;
+
+    private static final String REVIEWER = "oe5idt@oevsv.at";
+
+    private DiplomaLogResource logs;
+    private final List<List<Long>> marked = new CopyOnWriteArrayList<>();
+
     @BeforeEach
     void init() {
         mailbox.clear();
+        marked.clear();
+        logs = Mockito.mock(DiplomaLogResource.class);
+        QuarkusMock.installMockForType(logs, DiplomaLogResource.class);
+        when(logs.renewClaims(anyCollection(), anyString(), any())).thenReturn(true);
+        when(logs.markReviewMailSent(anyCollection(), anyString())).thenAnswer(invocation -> {
+            final Collection<Long> ids = invocation.getArgument(0);
+            marked.add(List.copyOf(ids));
+            return ids.size();
+        });
     }
 
     @Test
@@ -64,4 +109,148 @@ class MailingResourceTest {
         assertThat(actual.getSubject()).contains(requester.callSign).contains(requester.name);
         assertThat(actual.getAttachments()).hasSize(1);
     }
+
+    @Test
+    void backoff_doublesUpToMaximum() {
+        final var initial = Duration.ofMinutes(5L);
+        final var maximum = Duration.ofHours(6L);
+
+        assertThat(MailingResource.backoff(initial, maximum, 1)).isEqualTo(Duration.ofMinutes(5L));
+        assertThat(MailingResource.backoff(initial, maximum, 2)).isEqualTo(Duration.ofMinutes(10L));
+        assertThat(MailingResource.backoff(initial, maximum, 4)).isEqualTo(Duration.ofMinutes(40L));
+        assertThat(MailingResource.backoff(initial, maximum, 8)).isEqualTo(maximum);
+        assertThat(MailingResource.backoff(initial, maximum, 100)).isEqualTo(maximum);
+    }
+
+    @Test
+    void countsAsAttempt_notForSaturatedRendering() {
+        final var saturated = new RenderingCapacityExceededException(Duration.ofSeconds(30L));
+
+        assertThat(MailingResource.countsAsAttempt(saturated)).isFalse();
+        assertThat(MailingResource.countsAsAttempt(new UncheckedIOException(saturated))).isFalse();
+        assertThat(MailingResource.countsAsAttempt(new IOException("smtp down"))).isTrue();
+    }
+
+    @Test
+    void sendPendingRequests_failureOnlyAffectsItsRequest() {
+        claimable(pending(1L, "OE5AAA"), pending(2L, "OE5BBB"), pending(3L, "OE5CCC"));
+        when(logs.renewClaims(eq(List.of(2L)), anyString(), any())).thenReturn(false);
+
+        sut.sendPendingRequests();
+
+        assertThat(marked).containsExactlyInAnyOrder(List.of(1L), List.of(3L));
+        assertThat(mailbox.getMailsSentTo(REVIEWER)).hasSize(2);
+        verify(logs).recordFailedAttempt(eq(2L), anyString(), anyString(), anyInt(), any());
+        verify(logs, never()).recordFailedAttempt(eq(1L), anyString(), anyString(), anyInt(), any());
+        verify(logs).releaseClaims(eq(List.of(2L)), anyString());
+    }
+
+    @Test
+    void sendPendingRequests_sendsConcurrentlyUpToMailerPoolSize() {
+        final var batch = new DiplomaLog[4 * mailerPoolSize];
+        for (int index = 0; index < batch.length; ++index) {
+            batch[index] = pending(index + 1L, "OE5A" + (char) ('A' + index));
+        }
+        claimable(batch);
+        final var sending = new AtomicInteger();
+        final var maxSending = new AtomicInteger();
+        when(logs.renewClaims(anyCollection(), anyString(), any())).thenAnswer(invocation -> {
+            maxSending.accumulateAndGet(sending.incrementAndGet(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(300L);
+            } finally {
+                sending.decrementAndGet();
+            }
+            return true;
+        });
+
+        sut.sendPendingRequests();
+
+        assertThat(marked).hasSize(batch.length);
+        assertThat(maxSending.get()).isEqualTo(mailerPoolSize);
+    }
+
+    @Test
+    void sendPendingRequests_recordsRunMetrics() {
+        final long runs = registry.get("mailing.review.run").timer().count();
+        final double sent = registry.get("mailing.review.sent").counter().count();
+        final double failed = registry.get("mailing.review.failed").counter().count();
+        claimable(pending(1L, "OE5AAA"), pending(2L, "OE5BBB"));
+        when(logs.renewClaims(eq(List.of(2L)), anyString(), any())).thenReturn(false);
+
+        sut.sendPendingRequests();
+
+        assertThat(registry.get("mailing.review.run").timer().count()).isEqualTo(runs + 1L);
+        assertThat(registry.get("mailing.review.sent").counter().count()).isEqualTo(sent + 1.0);
+        assertThat(registry.get("mailing.review.failed").counter().count()).isEqualTo(failed + 1.0);
+        assertThat(registry.get("mailing.review.throughput").gauge().value()).isPositive();
+    }
+
+    @Test
+    void sendPendingRequests_bundlesRequestsOfRequester() {
+        claimable(pending(1L, "OE5AAA"), pending(2L, "OE5BBB"), pending(3L, "OE5AAA"), pending(4L, "OE5AAA"));
+
+        sut.sendPendingRequests();
+
+        assertThat(marked).containsExactlyInAnyOrder(List.of(1L, 3L, 4L), List.of(2L));
+        assertThat(mailbox.getMailsSentTo(REVIEWER)).extracting(mail -> mail.getAttachments().size()).containsExactlyInAnyOrder(3, 1);
+    }
+
+    @Test
+    void sendPendingRequests_splitsBundlesAtDigestSize() {
+        final int digestSize = configuration.digestSize();
+        final var batch = new DiplomaLog[digestSize + 2];
+        for (int index = 0; index < batch.length; ++index) {
+            batch[index] = pending(index + 1L, "OE5AAA");
+        }
+        claimable(batch);
+
+        sut.sendPendingRequests();
+
+        assertThat(marked).extracting(List::size).containsExactlyInAnyOrder(digestSize, 2);
+        assertThat(marked.stream().flatMap(List::stream)).hasSize(batch.length).doesNotHaveDuplicates();
+        assertThat(mailbox.getMailsSentTo(REVIEWER)).extracting(mail -> mail.getAttachments().size()).containsExactlyInAnyOrder(digestSize, 2);
+    }
+
+    @Test
+    void sendPendingRequests_neverMergesDifferentRequesters() {
+        claimable(pending(1L, "OE5AAA", "first@example.org"), pending(2L, "OE5AAA", "second@example.org"), pending(3L, "OE5AAA", "FIRST@example.org"));
+
+        sut.sendPendingRequests();
+
+        assertThat(marked).containsExactlyInAnyOrder(List.of(1L, 3L), List.of(2L));
+        assertThat(mailbox.getMailsSentTo(REVIEWER)).hasSize(2);
+    }
+
+    @Test
+    void sendPendingRequests_marksOrFailsBundleTogether() {
+        claimable(pending(1L, "OE5AAA"), pending(2L, "OE5AAA"), pending(3L, "OE5BBB"));
+        when(logs.renewClaims(eq(List.of(1L, 2L)), anyString(), any())).thenReturn(false);
+
+        sut.sendPendingRequests();
+
+        assertThat(marked).containsExactly(List.of(3L));
+        verify(logs).recordFailedAttempt(eq(1L), anyString(), anyString(), anyInt(), any());
+        verify(logs).recordFailedAttempt(eq(2L), anyString(), anyString(), anyInt(), any());
+        verify(logs).releaseClaims(eq(List.of(1L, 2L)), anyString());
+    }
+
+    private void claimable(DiplomaLog... batch) {
+        when(logs.claimPending(anyString(), anyInt(), any())).thenReturn(List.of(batch), List.of());
+    }
+
+    static DiplomaLog pending(Long id, String callSign) {
+        return pending(id, callSign, callSign.toLowerCase(Locale.ROOT) + "@example.org");
+    }
+
+    static DiplomaLog pending(Long id, String callSign, String mail) {
+        final var log = new DiplomaLog();
+        log.id = id;
+        log.setCallSign(callSign);
+        log.setMail(mail);
+        log.setName("Name of " + callSign);
+        log.setCategory(Candidate.Category.ACTIVATOR);
+        log.setRank(Candidate.Rank.BRONZE);
+        return log;
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.mail;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class RenderSendPipelineTest {
+
+    private static final int QUEUE_SIZE = 2;
+
+    private static final int RENDERERS = 3;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RenderSendPipeline<Integer, String> sut = new RenderSendPipeline<>(executor, RENDERERS, 2, QUEUE_SIZE, registry);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void sendsAllItemsAndReleasesThem() {
+        final var items = IntStream.range(0, 20).boxed().toList();
+        final Set<String> released = ConcurrentHashMap.newKeySet();
+
+        final var sent = sut.run(items, item -> "mail-" + item, (item, mail) -> assertThat(mail).isEqualTo("mail-" + item), released::add, (item, error) -> {
+        });
+
+        assertThat(sent).containsExactlyInAnyOrderElementsOf(items);
+        assertThat(released).hasSize(items.size());
+        assertThat(registry.find("mailing.pipeline.stage").tag("stage", "render").timer().count()).isEqualTo(20L);
+        assertThat(registry.find("mailing.pipeline.stage").tag("stage", "send").timer().count()).isEqualTo(20L);
+        assertThat(registry.find("mailing.pipeline.queue.depth").gauge().value()).isZero();
+    }
+
+    @Test
+    void rendersDoNotRunAheadOfSending() {
+        final var items = IntStream.range(0, 12).boxed().toList();
+        final var pending = new AtomicInteger();
+        final var maximumPending = new AtomicInteger();
+
+        sut.run(items, item -> {
+            maximumPending.accumulateAndGet(pending.incrementAndGet(), Math::max);
+            return "mail-" + item;
+        }, (item, mail) -> {
+            sleep();
+            pending.decrementAndGet();
+        }, mail -> {
+        }, (item, error) -> {
+        });
+
+        // queued, being sent, and rendered but blocked on the full queue
+        assertThat(maximumPending.get()).isLessThanOrEqualTo(QUEUE_SIZE + 2 + RENDERERS);
+    }
+
+    @Test
+    void rendersAreBoundedByRenderCount() {
+        final var items = IntStream.range(0, 20).boxed().toList();
+        final var rendering = new AtomicInteger();
+        final var maximumRendering = new AtomicInteger();
+
+        final var sent = sut.run(items, item -> {
+            maximumRendering.accumulateAndGet(rendering.incrementAndGet(), Math::max);
+            sleep();
+            rendering.decrementAndGet();
+            return "mail-" + item;
+        }, (item, mail) -> {
+        }, mail -> {
+        }, (item, error) -> {
+        });
+
+        assertThat(sent).hasSize(items.size());
+        assertThat(maximumRendering.get()).isBetween(2, RENDERERS);
+    }
+
+    @Test
+    void failuresOnlyAffectTheirItem() {
+        final var items = List.of(1, 2, 3, 4);
+        final Set<String> released = ConcurrentHashMap.newKeySet();
+        final Map<Integer, String> failed = new ConcurrentHashMap<>();
+
+        final var sent = sut.run(items, item -> {
+            if (item == 2) {
+                throw new IOException("cannot render");
+            }
+            return "mail-" + item;
+        }, (item, mail) -> {
+            if (item == 3) {
+                throw new IOException("cannot send");
+            }
+        }, released::add, (item, error) -> failed.put(item, error.getMessage()));
+
+        assertThat(sent).containsExactlyInAnyOrder(1, 4);
+        assertThat(released).containsExactlyInAnyOrder("mail-1", "mail-3", "mail-4");
+        assertThat(failed).containsOnly(Map.entry(2, "cannot render"), Map.entry(3, "cannot send"));
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.mail;
+
+import at.oevsv.sota.data.persistence.DiplomaRequestsCreated;
+import org.eclipse.microprofile.faulttolerance.exceptions.BulkheadException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+final class ReviewDispatcherTest {
+
+    private static final DiplomaRequestsCreated CREATED = new DiplomaRequestsCreated(1);
+
+    @Mock
+    MailingResource mailing;
+
+    @Mock
+    MailingConfiguration configuration;
+
+    private ReviewDispatcher sut;
+
+    @AfterEach
+    void shutdown() {
+        if (sut != null) {
+            sut.shutdown();
+        }
+    }
+
+    @Test
+    void requestsCreated_sendsPendingRequests() {
+        sut = dispatcher(true);
+
+        sut.onRequestsCreated(CREATED);
+
+        verify(mailing, timeout(5_000).times(1)).sendPendingRequests();
+    }
+
+    @Test
+    void requestsCreated_duringRun_areCoalescedIntoOneMoreRun() throws InterruptedException {
+        final var running = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            running.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).doNothing().when(mailing).sendPendingRequests();
+        sut = dispatcher(true);
+
+        sut.onRequestsCreated(CREATED);
+        running.await(5, TimeUnit.SECONDS);
+        sut.onRequestsCreated(CREATED);
+        sut.onRequestsCreated(CREATED);
+        sut.onRequestsCreated(CREATED);
+        release.countDown();
+
+        verify(mailing, after(500).times(2)).sendPendingRequests();
+    }
+
+    @Test
+    void requestsCreated_whileBulkheadIsFull_retriesOnceRunHasFinished() {
+        doThrow(new BulkheadException("full")).doThrow(new BulkheadException("full")).doNothing().when(mailing).sendPendingRequests();
+        sut = dispatcher(true);
+
+        sut.onRequestsCreated(CREATED);
+
+        verify(mailing, timeout(5_000).times(3)).sendPendingRequests();
+        verify(mailing, after(500).times(3)).sendPendingRequests();
+    }
+
+    @Test
+    void requestsCreated_whileRetrying_areCoalescedIntoRetry() {
+        doThrow(new BulkheadException("full")).doNothing().when(mailing).sendPendingRequests();
+        when(configuration.dispatchOnCreate()).thenReturn(true);
+        sut = new ReviewDispatcher(mailing, configuration, Duration.ofSeconds(1L));
+
+        sut.onRequestsCreated(CREATED);
+        verify(mailing, timeout(500).times(1)).sendPendingRequests();
+        sut.onRequestsCreated(CREATED);
+
+        verify(mailing, timeout(5_000).times(2)).sendPendingRequests();
+        verify(mailing, after(500).times(2)).sendPendingRequests();
+    }
+
+    @Test
+    void requestsCreated_disabled_leavesThemToTheSweep() {
+        sut = dispatcher(false);
+
+        sut.onRequestsCreated(CREATED);
+
+        verify(mailing, after(200).never()).sendPendingRequests();
+    }
+
+    private ReviewDispatcher dispatcher(boolean enabled) {
+        when(configuration.dispatchOnCreate()).thenReturn(enabled);
+        return new ReviewDispatcher(mailing, configuration, Duration.ofMillis(50L));
+    }
+}
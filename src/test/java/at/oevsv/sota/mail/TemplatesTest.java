@@ -58,6 +58,15 @@ final class TemplatesTest {
         assertThat(rendered).contains("OE1: 1").contains("OE5: 12");
     }
 
+    @Test
+    void severalCandidates_referToAllAttachments() {
+        final var bronze = new Candidate("OE5IDT", "", Candidate.Category.S2S, Candidate.Rank.BRONZE, Map.of(Summit.State.OE1, 1L));
+        final var silver = new Candidate("OE5IDT", "", Candidate.Category.ACTIVATOR, Candidate.Rank.SILVER, Map.of(Summit.State.OE5, 12L));
+        final var rendered = Templates.reviewRequest(getRequester(), List.of(bronze, silver)).templateInstance().render();
+
+        assertThat(rendered).contains("S2S (BRONZE)").contains("ACTIVATOR (SILVER)").contains("die Anhänge");
+    }
+
     @NotNull
     private static Requester getRequester() {
         return new Requester("OE5IDT", "oe5idt@oevsv.at", "David Schwingenschlögl");
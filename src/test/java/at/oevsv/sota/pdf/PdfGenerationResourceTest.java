@@ -20,11 +20,17 @@ import at.oevsv.sota.data.WireMockExtension;
 import at.oevsv.sota.data.api.Candidate;
 import at.oevsv.sota.data.api.Generation;
 import at.oevsv.sota.data.api.Requester;
+import com.google.common.collect.Iterables;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+import io.quarkus.cache.CacheManager;
+import io.quarkus.cache.CaffeineCache;
 import io.quarkus.test.common.QuarkusTestResource;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.security.TestSecurity;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.StreamingOutput;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -32,7 +38,11 @@ import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
 import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -50,6 +60,9 @@ final class PdfGenerationResourceTest {
     @Inject
     PdfGenerationResource sut;
 
+    @Inject
+    CacheManager cacheManager;
+
     // region fileNameFor
     @Test
     void fileNameFor_matchesFully() {
@@ -119,7 +132,48 @@ final class PdfGenerationResourceTest {
         assertThat(response).hasStatusCode(200).hasMediaType(MediaType.valueOf("application/pdf")).hasEntity();
     }
 
+    @Test
+    @TestSecurity(user = "test", roles = "admin")
+    void generatePdf_stampsTemplate() throws IOException {
+        final var templates = cacheManager.getCache("diploma-template-cache").orElseThrow().as(CaffeineCache.class);
+        templates.invalidateAll().await().indefinitely();
+        final var generation = new Generation(requester(), candidate(Candidate.Category.ACTIVATOR, Candidate.Rank.GOLD));
+        generation.setSequence(12);
+
+        final var first = textOf(render(generation));
+
+        final var today = DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(generation.getLocale()).format(LocalDate.now());
+        assertThat(first).containsIgnoringCase(CALL_SIGN).contains("ACT-GO-0012").contains(today);
+        assertThat(templates.keySet()).hasSize(1);
+        final var template = templates.getIfPresent(Iterables.getOnlyElement(templates.keySet())).join();
+
+        generation.setSequence(13);
+        final var second = textOf(render(generation));
+
+        assertThat(second).containsIgnoringCase(CALL_SIGN).contains("ACT-GO-0013").doesNotContain("ACT-GO-0012");
+        assertThat(templates.keySet()).hasSize(1);
+        assertThat(templates.getIfPresent(Iterables.getOnlyElement(templates.keySet())).join()).isSameAs(template);
+    }
+
     // region Test helpers
+    @Nonnull
+    private byte[] render(Generation generation) throws IOException {
+        final var os = new ByteArrayOutputStream();
+        ((StreamingOutput) sut.generatePdf(generation).getEntity()).write(os);
+        return os.toByteArray();
+    }
+
+    @Nonnull
+    private static String textOf(byte[] pdf) throws IOException {
+        final var reader = new PdfReader(pdf);
+        try {
+            assertThat(reader.getNumberOfPages()).isEqualTo(1);
+            return new PdfTextExtractor(reader).getTextFromPage(1);
+        } finally {
+            reader.close();
+        }
+    }
+
     @Nonnull
     private static Requester requester() {
         return new Requester(CALL_SIGN, "oe5idt@oevsv.at", "David Schwingenschlögl");
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+final class PdfRenderingServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PdfRenderingService sut = new PdfRenderingService(configuration(1, 1), registry);
+
+    @AfterEach
+    void shutdown() {
+        sut.shutdown();
+    }
+
+    @Test
+    void render_returnsResult() throws IOException {
+        assertThat(sut.render(() -> "rendered")).isEqualTo("rendered");
+        assertThat(registry.get("pdf.rendering.duration").timer().count()).isEqualTo(1L);
+    }
+
+    @Test
+    void render_propagatesIOException() {
+        assertThatThrownBy(() -> sut.render(() -> {
+            throw new IOException("broken");
+        })).isInstanceOf(IOException.class).hasMessage("broken");
+    }
+
+    @Test
+    void submit_rejectsWhenSaturated() throws Exception {
+        final var release = new CountDownLatch(1);
+        final var started = new CountDownLatch(1);
+        final var running = sut.submit(() -> {
+            started.countDown();
+            awaitQuietly(release);
+            return 1;
+        });
+        assertThat(started.await(5L, TimeUnit.SECONDS)).isTrue();
+        final var queued = sut.submit(() -> 2);
+
+        try {
+            assertThatThrownBy(() -> sut.submit(() -> 3))
+                    .isInstanceOf(RenderingCapacityExceededException.class)
+                    .satisfies(e -> assertThat(((RenderingCapacityExceededException) e).getRetryAfter()).isEqualTo(Duration.ofSeconds(30L)));
+            assertThat(registry.get("pdf.rendering.rejected").counter().count()).isEqualTo(1.0);
+        } finally {
+            release.countDown();
+        }
+        assertThat(running.get(5L, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(queued.get(5L, TimeUnit.SECONDS)).isEqualTo(2);
+    }
+
+    @Test
+    void render_timeout_interruptsRenderAndFreesSlot() throws Exception {
+        final var sut = new PdfRenderingService(configuration(1, 1, Duration.ofMillis(100L)), registry);
+        final var interrupted = new CountDownLatch(1);
+        try {
+            assertThatThrownBy(() -> sut.render(() -> {
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30L));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new InterruptedIOException();
+                }
+                return 1;
+            })).isInstanceOf(IOException.class).hasMessage("Render did not complete in time.");
+
+            assertThat(interrupted.await(5L, TimeUnit.SECONDS)).isTrue();
+            assertThat(sut.submit(() -> 2).get(5L, TimeUnit.SECONDS)).isEqualTo(2);
+        } finally {
+            sut.shutdown();
+        }
+    }
+
+    @Test
+    void render_timeout_discardsLateResult() throws Exception {
+        final var sut = new PdfRenderingService(configuration(1, 1, Duration.ofMillis(100L)), registry);
+        final var discarded = new AtomicReference<String>();
+        final var done = new CountDownLatch(1);
+        try {
+            assertThatThrownBy(() -> sut.render(() -> {
+                Uninterruptibles.sleepUninterruptibly(500L, TimeUnit.MILLISECONDS);
+                return "late";
+            }, result -> {
+                discarded.set(result);
+                done.countDown();
+            })).isInstanceOf(IOException.class);
+
+            assertThat(done.await(5L, TimeUnit.SECONDS)).isTrue();
+            assertThat(discarded).hasValue("late");
+        } finally {
+            sut.shutdown();
+        }
+    }
+
+    @Test
+    void interruptibleOutputStream_failsOnceCancelled() throws IOException {
+        final var target = new ByteArrayOutputStream();
+        final var os = new InterruptibleOutputStream(target);
+        os.write(1);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> os.write(2)).isInstanceOf(InterruptedIOException.class);
+        } finally {
+            Thread.interrupted();
+        }
+        assertThat(target.toByteArray()).containsExactly(1);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static RenderingConfiguration configuration(int slots, int queueSize) {
+        return configuration(slots, queueSize, Duration.ofSeconds(5L));
+    }
+
+    static RenderingConfiguration configuration(int slots, int queueSize, Duration timeout) {
+        return new RenderingConfiguration() {
+            @Override
+            public int slots() {
+                return slots;
+            }
+
+            @Override
+            public int queueSize() {
+                return queueSize;
+            }
+
+            @Override
+            public Duration retryAfter() {
+                return Duration.ofSeconds(30L);
+            }
+
+            @Override
+            public Duration timeout() {
+                return timeout;
+            }
+        };
+    }
+}
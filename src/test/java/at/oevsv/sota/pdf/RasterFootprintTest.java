@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.RenderProfile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+/**
+ * Guards the memory footprint of composing a background: decoding the artwork, drawing onto it and encoding it as
+ * JPEG. A full-size raster of the artwork costs 35 MB; decoding and drawing it through PdfGraphics2D used to allocate
+ * about 250 MB at print resolution, and still 100 MB or more for previews.
+ */
+final class RasterFootprintTest {
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private static byte[] artwork;
+
+    @BeforeAll
+    static void createArtwork() throws IOException {
+        artwork = RastersTest.png(3508, 2480);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"PRINT, 128", "SCREEN, 32", "PREVIEW, 16"})
+    void composeAndEncode_staysWithinBudget(RenderProfile profile, int budgetInMegabytes) throws IOException {
+        final var threads = ManagementFactory.getThreadMXBean();
+        assumeThat(threads).isInstanceOf(com.sun.management.ThreadMXBean.class);
+        final var allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeThat(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()).isTrue();
+
+        // warm up, so class loading and one-time initialization do not count
+        composeAndEncode(profile);
+
+        final long before = allocations.getCurrentThreadAllocatedBytes();
+        final int size = composeAndEncode(profile);
+        final long allocated = allocations.getCurrentThreadAllocatedBytes() - before;
+
+        assertThat(size).isPositive();
+        assertThat(allocated).as("bytes allocated for %s", profile).isLessThan((long) budgetInMegabytes * MEGABYTE);
+    }
+
+    @Test
+    void jpegBuffer_isSizedFromRaster() throws IOException {
+        final var print = Rasters.read(new ByteArrayInputStream(artwork), RenderProfile.PRINT.getScale()).image();
+        final var preview = Rasters.read(new ByteArrayInputStream(artwork), RenderProfile.PREVIEW.getScale()).image();
+
+        assertThat(PdfBackgroundSetter.expectedSize(print)).isBetween(2 * MEGABYTE, 3 * MEGABYTE);
+        assertThat(PdfBackgroundSetter.expectedSize(preview)).isLessThan(PdfBackgroundSetter.expectedSize(print) / 8);
+    }
+
+    private static int composeAndEncode(RenderProfile profile) throws IOException {
+        final var background = Rasters.read(new ByteArrayInputStream(artwork), profile.getScale());
+        final var graphics = background.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(1000, 675, 864, 288);
+        } finally {
+            graphics.dispose();
+        }
+
+        final var os = new ByteArrayOutputStream();
+        Rasters.writeJpeg(background.image(), profile.getQuality(), os);
+        return os.size();
+    }
+}
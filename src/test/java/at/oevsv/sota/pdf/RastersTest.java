@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.RenderProfile;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+final class RastersTest {
+
+    @Test
+    void scaled_print_keepsArtwork() {
+        final var artwork = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+
+        assertThat(Rasters.scaled(artwork, RenderProfile.PRINT.getScale())).isSameAs(artwork);
+    }
+
+    @Test
+    void scaled_preview_reducesResolution() {
+        final var artwork = new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB);
+
+        final var scaled = Rasters.scaled(artwork, RenderProfile.PREVIEW.getScale());
+
+        assertThat(scaled.getWidth()).isEqualTo(100);
+        assertThat(scaled.getHeight()).isEqualTo(67);
+        assertThat(scaled.getColorModel().hasAlpha()).isTrue();
+    }
+
+    @Test
+    void read_preview_subsamples() throws IOException {
+        final var artwork = Rasters.read(new ByteArrayInputStream(png(300, 200)), RenderProfile.PREVIEW.getScale());
+
+        assertThat(artwork.width()).isEqualTo(300);
+        assertThat(artwork.height()).isEqualTo(200);
+        assertThat(artwork.image().getWidth()).isEqualTo(100);
+        assertThat(artwork.image().getHeight()).isEqualTo(67);
+    }
+
+    @Test
+    void writeJpeg_dropsAlpha() throws IOException {
+        final var artwork = Rasters.read(new ByteArrayInputStream(png(300, 200)), RenderProfile.PRINT.getScale());
+        assertThat(artwork.image().getColorModel().hasAlpha()).isTrue();
+
+        final var os = new ByteArrayOutputStream();
+        Rasters.writeJpeg(artwork.image(), 0.95f, os);
+
+        final var decoded = ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+        assertThat(decoded.getWidth()).isEqualTo(300);
+        assertThat(decoded.getColorModel().hasAlpha()).isFalse();
+        assertThat(new Color(decoded.getRGB(150, 100)).getRed()).isCloseTo(new Color(artwork.image().getRGB(150, 100)).getRed(), within(8));
+    }
+
+    static byte[] png(int width, int height) throws IOException {
+        final var image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        final var graphics = image.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+            graphics.fillRect(0, 0, width, height);
+        } finally {
+            graphics.dispose();
+        }
+
+        final var os = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", os);
+        return os.toByteArray();
+    }
+}
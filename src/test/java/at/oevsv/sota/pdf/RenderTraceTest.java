@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.Candidate;
+import at.oevsv.sota.data.api.Generation;
+import at.oevsv.sota.data.api.RenderProfile;
+import at.oevsv.sota.data.api.Requester;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+final class RenderTraceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    void recordsNestedPhasesWithTags() throws IOException {
+        final var generation = generation();
+        try (final var ignored = RenderTrace.begin(RenderTrace.Phase.STAMP, generation, mock(DiplomaGenerator.class))) {
+            final var result = RenderTrace.phase(RenderTrace.Phase.LAYOUT, () -> RenderTrace.phase(RenderTrace.Phase.FONTS, () -> "font"));
+            assertThat(result).isEqualTo("font");
+        }
+
+        for (final var phase : new String[]{"stamp", "layout", "fonts"}) {
+            final var timer = registry.find("pdf.render.phase").tag("phase", phase).timer();
+            assertThat(timer).as(phase).isNotNull();
+            assertThat(timer.count()).as(phase).isOne();
+            assertThat(timer.getId().getTag("category")).isEqualTo("S2S");
+            assertThat(timer.getId().getTag("profile")).isEqualTo("PREVIEW");
+        }
+    }
+
+    @Test
+    void recordsFailedPhase() {
+        try (final var ignored = RenderTrace.begin(RenderTrace.Phase.STAMP, generation(), mock(DiplomaGenerator.class))) {
+            assertThatThrownBy(() -> RenderTrace.run(RenderTrace.Phase.ENCODE, () -> {
+                throw new IOException("broken");
+            })).hasMessage("broken");
+        }
+
+        assertThat(registry.find("pdf.render.phase").tag("phase", "encode").timer()).isNotNull();
+    }
+
+    @Test
+    void ignoresPhasesOutsideTrace() throws IOException {
+        assertThat(RenderTrace.phase(RenderTrace.Phase.DECODE, () -> 42)).isEqualTo(42);
+
+        assertThat(registry.find("pdf.render.phase").tag("phase", "decode").timers()).allMatch(timer -> timer.count() == 0L);
+    }
+
+    private static Generation generation() {
+        final var generation = new Generation(new Requester("OE5IDT", "oe5idt@oevsv.at", "David Schwingenschlögl"),
+                new Candidate("OE5IDT", "12345", Candidate.Category.S2S, Candidate.Rank.BRONZE, Map.of()));
+        generation.setProfile(RenderProfile.PREVIEW);
+        return generation;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.Candidate;
+import at.oevsv.sota.data.api.Generation;
+import at.oevsv.sota.data.api.Requester;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class RenderedDiplomaStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void keyFor_dependsOnGeneration() {
+        final var sut = store(1024L);
+        final var generation = generation(1);
+
+        assertThat(sut.keyFor(generation, "format")).isEqualTo(sut.keyFor(generation(1), "format"));
+        assertThat(sut.keyFor(generation, "format")).isNotEqualTo(sut.keyFor(generation(2), "format"));
+        assertThat(sut.keyFor(generation, "format")).isNotEqualTo(sut.keyFor(generation, "other"));
+        assertThat(store(1024L, "other version").keyFor(generation, "format")).isNotEqualTo(sut.keyFor(generation, "format"));
+    }
+
+    @Test
+    void copyTo_servesSavedDiploma() throws IOException {
+        final var sut = store(1024L);
+        final var key = sut.keyFor(generation(1), "format");
+
+        assertThat(sut.copyTo(key, new ByteArrayOutputStream())).isFalse();
+        sut.save(key, file("rendered"));
+
+        final var os = new ByteArrayOutputStream();
+        assertThat(sut.copyTo(key, os)).isTrue();
+        assertThat(os.toString(StandardCharsets.UTF_8)).isEqualTo("rendered");
+        assertThat(registry.get("pdf.store.hits").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("pdf.store.misses").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void save_evictsLeastRecentlyUsed() throws IOException {
+        final var sut = store(20L);
+        sut.save("a", file("0123456789"));
+        sut.save("b", file("0123456789"));
+        assertThat(sut.copyTo("a", new ByteArrayOutputStream())).isTrue();
+
+        sut.save("c", file("0123456789"));
+
+        assertThat(sut.count()).isEqualTo(2);
+        assertThat(sut.size()).isEqualTo(20L);
+        assertThat(sut.copyTo("b", new ByteArrayOutputStream())).isFalse();
+        assertThat(sut.copyTo("a", new ByteArrayOutputStream())).isTrue();
+        assertThat(directory.resolve("store").resolve("b.pdf")).doesNotExist();
+        assertThat(registry.get("pdf.store.evictions").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void constructor_restoresExistingDiplomas() throws IOException {
+        store(1024L).save("a", file("rendered"));
+
+        final var sut = store(1024L);
+
+        assertThat(sut.count()).isEqualTo(1);
+        final var copy = sut.copyOf("a");
+        assertThat(copy).isNotNull().hasContent("rendered");
+        Files.delete(copy.toPath());
+    }
+
+    @Test
+    void disabled_neverServes() {
+        final var sut = new RenderedDiplomaStore(configuration(false, 1024L), "version", registry);
+
+        assertThat(sut.keyFor(generation(1), "format")).isNull();
+    }
+
+    private RenderedDiplomaStore store(long maxSize) {
+        return store(maxSize, "version");
+    }
+
+    private RenderedDiplomaStore store(long maxSize, String version) {
+        return new RenderedDiplomaStore(configuration(true, maxSize), version, registry);
+    }
+
+    private File file(String content) throws IOException {
+        return Files.writeString(Files.createTempFile(directory, "rendered-", ".tmp"), content).toFile();
+    }
+
+    private static Generation generation(int sequence) {
+        final var generation = new Generation(new Requester("OE5IDT", "oe5idt@example.com", "David"),
+                new Candidate("OE5IDT", "1234", Candidate.Category.ACTIVATOR, Candidate.Rank.GOLD, Map.of()));
+        generation.setSequence(sequence);
+        return generation;
+    }
+
+    private RenderedDiplomaStoreConfiguration configuration(boolean enabled, long maxSize) {
+        final var storeDirectory = directory.resolve("store");
+        return new RenderedDiplomaStoreConfiguration() {
+            @Override
+            public boolean enabled() {
+                return enabled;
+            }
+
+            @Override
+            public Optional<Path> directory() {
+                return Optional.of(storeDirectory);
+            }
+
+            @Override
+            public MemorySize maxSize() {
+                return new MemorySize(BigInteger.valueOf(maxSize));
+            }
+        };
+    }
+}
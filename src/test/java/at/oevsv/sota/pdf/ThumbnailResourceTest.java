@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import at.oevsv.sota.data.api.Candidate;
+import at.oevsv.sota.data.domain.Summit;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class ThumbnailResourceTest {
+
+    @Test
+    void key_dependsOnShapeOnly() {
+        final var few = new Candidate("OE5IDT", "1", Candidate.Category.ACTIVATOR, Candidate.Rank.GOLD, Map.of(Summit.State.OE5, 1L, Summit.State.OE1, 0L));
+        final var many = new Candidate("OE5REO", "2", Candidate.Category.ACTIVATOR, Candidate.Rank.GOLD, Map.of(Summit.State.OE5, 42L));
+        final var other = new Candidate("OE5IDT", "1", Candidate.Category.ACTIVATOR, Candidate.Rank.GOLD, Map.of(Summit.State.OE4, 1L));
+
+        assertThat(ThumbnailResource.Key.of(few, Locale.GERMAN)).isEqualTo(ThumbnailResource.Key.of(many, Locale.GERMAN));
+        assertThat(ThumbnailResource.Key.of(few, Locale.GERMAN)).isNotEqualTo(ThumbnailResource.Key.of(other, Locale.GERMAN));
+        assertThat(ThumbnailResource.Key.of(few, Locale.GERMAN).toGeneration().getCandidate().activations()).containsOnlyKeys(Summit.State.OE5);
+    }
+
+    @Test
+    void render_producesPngOfRequestedWidth() throws IOException {
+        final byte[] png = ThumbnailResource.render(new ImageRenderer() {
+            @Override
+            public void render(Graphics2D target) {
+                target.setColor(Color.RED);
+                target.fill(target.getClipBounds());
+            }
+
+            @Override
+            public BufferedImage renderTemplate() {
+                throw new UnsupportedOperationException();
+            }
+        }, 600);
+
+        final var image = ImageIO.read(new ByteArrayInputStream(png));
+        assertThat(image.getWidth()).isEqualTo(600);
+        assertThat(image.getHeight()).isEqualTo(424);
+        assertThat(image.getRGB(300, 200)).isEqualTo(Color.RED.getRGB());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusIntegrationTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Startup benchmark: requests a diploma right after the packaged application has started and reports the time from
+ * process start until it was rendered (<code>pdf.render.first</code>). Run it against the JVM build
+ * (<code>mvn verify -DskipITs=false</code>) and the native build (<code>mvn verify -Dnative</code>) to compare; like
+ * the packaged application, it needs the configured database.
+ */
+@QuarkusIntegrationTest
+@TestProfile(TimeToFirstPdfIT.Profile.class)
+final class TimeToFirstPdfIT {
+
+    private static final String PASSWORD = "benchmark";
+    private static final Pattern FIRST_RENDER = Pattern.compile("^pdf_render_first_seconds\\S* (\\S+)$", Pattern.MULTILINE);
+
+    public static final class Profile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("administrator.password", PASSWORD, "pdf.store.enabled", "false");
+        }
+    }
+
+    @TestHTTPResource("/")
+    URI root;
+
+    @Test
+    void timeToFirstPdf() throws IOException, InterruptedException {
+        final var client = HttpClient.newHttpClient();
+        final var generate = HttpRequest.newBuilder(root.resolve("api/diploma/pdf/generate"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString(("administrator:" + PASSWORD).getBytes(StandardCharsets.UTF_8)))
+                .POST(HttpRequest.BodyPublishers.ofString("""
+                        {
+                          "requester": {"callSign": "oe5idt", "mail": "oe5idt@oevsv.at", "name": "David Schwingenschlögl"},
+                          "candidate": {"callSign": "oe5idt", "userID": "12345", "category": "S2S", "rank": "BRONZE",
+                                        "activations": {"OE3": 10, "OE6": 4, "OE7": 10}},
+                          "sequence": 1,
+                          "locale": "de-AT"
+                        }
+                        """))
+                .build();
+        final long requested = System.nanoTime();
+        final var pdf = client.send(generate, HttpResponse.BodyHandlers.ofByteArray());
+        final long requestMillis = (System.nanoTime() - requested) / 1_000_000L;
+        assertThat(pdf.statusCode()).isEqualTo(200);
+        assertThat(new String(pdf.body(), 0, 5, StandardCharsets.US_ASCII)).isEqualTo("%PDF-");
+
+        final var metrics = client.send(HttpRequest.newBuilder(root.resolve("q/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+        final var matcher = FIRST_RENDER.matcher(metrics.body());
+        assertThat(matcher.find()).as("pdf.render.first is published").isTrue();
+        final double seconds = Double.parseDouble(matcher.group(1));
+
+        System.out.printf("Time to first PDF: %.0f ms after process start (first request took %d ms)%n", seconds * 1000.0, requestMillis);
+    }
+}
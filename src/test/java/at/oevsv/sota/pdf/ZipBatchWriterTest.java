@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+final class ZipBatchWriterTest {
+
+    private final PdfRenderingService rendering = new PdfRenderingService(PdfRenderingServiceTest.configuration(2, 2), new SimpleMeterRegistry());
+    private final List<File> files = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        rendering.shutdown();
+    }
+
+    @Test
+    void uniqueName() {
+        final var names = new HashSet<String>();
+        assertThat(ZipBatchWriter.uniqueName(names, "diploma.pdf")).isEqualTo("diploma.pdf");
+        assertThat(ZipBatchWriter.uniqueName(names, "diploma.pdf")).isEqualTo("diploma_2.pdf");
+        assertThat(ZipBatchWriter.uniqueName(names, "diploma.pdf")).isEqualTo("diploma_3.pdf");
+        assertThat(ZipBatchWriter.uniqueName(names, "diploma")).isEqualTo("diploma");
+        assertThat(ZipBatchWriter.uniqueName(names, "diploma")).isEqualTo("diploma_2");
+    }
+
+    @Test
+    void write_containsAllEntries() throws IOException {
+        final var entries = new ArrayList<ZipBatchWriter.Entry>();
+        for (int i = 0; i < 5; ++i) {
+            entries.add(entry("same.pdf", "content " + i));
+        }
+
+        final var os = new ByteArrayOutputStream();
+        new ZipBatchWriter(rendering, 2, Duration.ofSeconds(5L)).write(entries, os);
+
+        final var contents = unzip(os.toByteArray());
+        assertThat(contents).containsOnlyKeys("same.pdf", "same_2.pdf", "same_3.pdf", "same_4.pdf", "same_5.pdf");
+        assertThat(contents.values()).containsExactlyInAnyOrder("content 0", "content 1", "content 2", "content 3", "content 4");
+        assertThat(files).isNotEmpty().noneMatch(File::exists);
+    }
+
+    @Test
+    void write_listsBrokenEntryInManifest() throws IOException {
+        final var entries = List.of(entry("a.pdf", "a"), new ZipBatchWriter.Entry("b.pdf", () -> {
+            throw new IOException("broken");
+        }), entry("c.pdf", "c"));
+
+        final var os = new ByteArrayOutputStream();
+        new ZipBatchWriter(rendering, 2, Duration.ofSeconds(5L)).write(entries, os);
+
+        final var contents = unzip(os.toByteArray());
+        assertThat(contents).containsOnlyKeys("a.pdf", "c.pdf", ZipBatchWriter.ERROR_MANIFEST);
+        assertThat(contents.get(ZipBatchWriter.ERROR_MANIFEST)).isEqualTo("b.pdf: broken\n");
+        assertThat(files).noneMatch(File::exists);
+    }
+
+    @Test
+    void write_cancelsStuckEntry() throws IOException {
+        final var entries = List.of(entry("a.pdf", "a"), new ZipBatchWriter.Entry("stuck.pdf", () -> {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30L));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            throw new IllegalStateException("not cancelled");
+        }), entry("c.pdf", "c"));
+
+        final var os = new ByteArrayOutputStream();
+        final long started = System.nanoTime();
+        new ZipBatchWriter(rendering, 2, Duration.ofMillis(200L)).write(entries, os);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(10L));
+        final var contents = unzip(os.toByteArray());
+        assertThat(contents).containsOnlyKeys("a.pdf", "c.pdf", ZipBatchWriter.ERROR_MANIFEST);
+        assertThat(contents.get(ZipBatchWriter.ERROR_MANIFEST)).isEqualTo("stuck.pdf: did not complete in time\n");
+    }
+
+    @Test
+    void write_rejectsBatchIfSaturatedBeforeFirstEntry() throws Exception {
+        final var saturated = new PdfRenderingService(PdfRenderingServiceTest.configuration(1, 1), new SimpleMeterRegistry());
+        final var release = new CountDownLatch(1);
+        try {
+            saturated.submit(() -> Uninterruptibles.awaitUninterruptibly(release, 5L, TimeUnit.SECONDS));
+            saturated.submit(() -> Uninterruptibles.awaitUninterruptibly(release, 5L, TimeUnit.SECONDS));
+
+            assertThatThrownBy(() -> new ZipBatchWriter(saturated, 1, Duration.ofSeconds(5L)).write(List.of(entry("a.pdf", "a")), new ByteArrayOutputStream()))
+                    .isInstanceOf(RenderingCapacityExceededException.class);
+        } finally {
+            release.countDown();
+            saturated.shutdown();
+        }
+    }
+
+    @Test
+    void write_waitsForCapacityTakenByOthers() throws IOException {
+        final var shared = saturatedAfterFirstSubmit(3);
+        final var entries = List.of(entry("a.pdf", "a"), entry("b.pdf", "b"), entry("c.pdf", "c"));
+
+        final var os = new ByteArrayOutputStream();
+        new ZipBatchWriter(shared, 1, Duration.ofSeconds(5L)).write(entries, os);
+
+        final var contents = unzip(os.toByteArray());
+        assertThat(contents).containsOnlyKeys("a.pdf", "b.pdf", "c.pdf");
+    }
+
+    @Test
+    void write_givesUpOnEntriesOnceSaturatedForTimeout() throws IOException {
+        final var shared = saturatedAfterFirstSubmit(Integer.MAX_VALUE);
+        final var entries = List.of(entry("a.pdf", "a"), entry("b.pdf", "b"), entry("c.pdf", "c"));
+
+        final var os = new ByteArrayOutputStream();
+        final long started = System.nanoTime();
+        new ZipBatchWriter(shared, 1, Duration.ofMillis(300L)).write(entries, os);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isGreaterThanOrEqualTo(Duration.ofMillis(300L));
+        final var contents = unzip(os.toByteArray());
+        assertThat(contents).containsOnlyKeys("a.pdf", ZipBatchWriter.ERROR_MANIFEST);
+        assertThat(contents.get(ZipBatchWriter.ERROR_MANIFEST)).isEqualTo("b.pdf: rendering capacity exceeded\nc.pdf: rendering capacity exceeded\n");
+    }
+
+    /**
+     * A rendering service that accepts the first render and then rejects the next <code>rejections</code> submits, as if
+     * other callers held all slots meanwhile.
+     */
+    private static PdfRenderingService saturatedAfterFirstSubmit(int rejections) throws IOException {
+        final var shared = mock(PdfRenderingService.class);
+        final var submits = new AtomicInteger();
+        when(shared.submit(any(), any())).thenAnswer(invocation -> {
+            final int submit = submits.getAndIncrement();
+            if (submit > 0 && submit <= rejections) {
+                throw new RenderingCapacityExceededException(Duration.ofSeconds(1L));
+            }
+            final PdfRenderingService.RenderTask<?> task = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(task.render());
+        });
+        return shared;
+    }
+
+    private ZipBatchWriter.Entry entry(String fileName, String content) {
+        return new ZipBatchWriter.Entry(fileName, () -> {
+            final var file = Files.createTempFile("batch-", ".pdf").toFile();
+            synchronized (files) {
+                files.add(file);
+            }
+            Files.writeString(file.toPath(), content);
+            return file;
+        });
+    }
+
+    private static Map<String, String> unzip(byte[] archive) throws IOException {
+        final Map<String, String> contents = new HashMap<>();
+        try (final var zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                contents.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf.diploma;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+final class DiplomaAssetsTest {
+
+    @Test
+    void embedsFontsBadgesAndBanners() {
+        assertThat(DiplomaAssets.names()).hasSize(4 + 2 * 9 + 3).allMatch(DiplomaAssets::isEmbedded);
+    }
+
+    @Test
+    void servesEmbeddedAssetsFromMemory() throws IOException {
+        final var bytes = DiplomaAssets.font("consola.ttf");
+
+        assertThat(DiplomaAssets.font("consola.ttf")).isSameAs(bytes);
+        try (final var is = DiplomaAssets.open("/pdf/fonts/consola.ttf")) {
+            assertThat(is.readAllBytes()).isEqualTo(bytes);
+        }
+    }
+
+    @Test
+    void fallsBackToResources() throws IOException {
+        assertThat(DiplomaAssets.isEmbedded("/pdf/layouts/default.json")).isFalse();
+        assertThat(DiplomaAssets.bytes("/pdf/layouts/default.json")).isNotEmpty();
+        assertThatThrownBy(() -> DiplomaAssets.open("/pdf/images/unknown.png")).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf.diploma;
+
+import com.lowagie.text.PageSize;
+import com.lowagie.text.Rectangle;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+final class DiplomaLayoutTest {
+
+    /**
+     * A4 landscape, exactly as the templates use it (not rounded to full points like {@link PageSize#A4}).
+     */
+    private static final Rectangle PAGE = new Rectangle(297.0f / 25.4f * 72.0f, 210.0f / 25.4f * 72.0f);
+
+    @Test
+    void defaultLayout() {
+        final var layout = DiplomaLayout.load("default", DefaultTextRenderer.REGIONS, true);
+
+        final var manager = layout.region("manager", PAGE);
+        assertThat(manager.getLeft()).isEqualTo(25.0f);
+        assertThat(manager.getRight()).isEqualTo(145.0f);
+        assertThat(manager.getBottom()).isEqualTo(30.0f);
+        assertThat(manager.getTop()).isEqualTo(80.0f);
+
+        final var info = layout.region("info", PAGE);
+        assertThat(info.getLeft()).isEqualTo(PAGE.getRight(145.0f));
+        assertThat(info.getRight()).isEqualTo(PAGE.getRight(25.0f));
+
+        // the name takes the middle third of the main box, shifted down a bit
+        final var name = layout.region("name", PAGE);
+        final var mainBoxHeight = PAGE.getTop(130.0f) - PAGE.getBottom(190.0f);
+        assertThat(name.getTop()).isCloseTo(PAGE.getTop(130.0f) - mainBoxHeight / 3.0f - 30.0f, within(0.01f));
+        assertThat(name.getHeight()).isCloseTo(mainBoxHeight / 3.0f, within(0.01f));
+
+        assertThat(layout.artwork().banner()).isEqualTo(new DiplomaLayout.Point(1322, 675));
+        assertThat(layout.statePositions()).hasSize(9);
+        assertThat(layout.statePositions().get(0)).isEqualTo(new DiplomaLayout.Point(247, 1510));
+        assertThat(layout.statePositions().get(4).y()).isEqualTo(1910);
+        assertThat(layout.statePositions().get(8)).isEqualTo(new DiplomaLayout.Point(247 + 8 * 335, 1510));
+    }
+
+    @Test
+    void oe20Layout() {
+        final var layout = DiplomaLayout.load("oe20sota", OE20TextRenderer.REGIONS, false);
+
+        final var name = layout.region("name", PAGE);
+        assertThat(name.getLeft()).isEqualTo(220.0f);
+        assertThat(name.getTop()).isEqualTo(PAGE.getTop(270.0f));
+        assertThat(name.getBottom()).isEqualTo(201.25f);
+        assertThat(layout.statePositions()).isEmpty();
+        assertThatThrownBy(layout::artwork).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void missingRegion() {
+        assertThatThrownBy(() -> DiplomaLayout.load("oe20sota", Set.of("title"), false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("title");
+    }
+
+    @Test
+    void missingArtwork() {
+        assertThatThrownBy(() -> DiplomaLayout.load("oe20sota", Set.of(), true)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void overdeterminedRegion() {
+        assertThatThrownBy(() -> DiplomaLayout.load("overdetermined", Set.of("name"), false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("overdetermined.name");
+    }
+
+    @Test
+    void missingLayout() {
+        assertThatThrownBy(() -> DiplomaLayout.load("unknown", Set.of(), false)).isInstanceOf(IllegalStateException.class);
+    }
+}
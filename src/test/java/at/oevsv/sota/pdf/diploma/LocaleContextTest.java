@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.pdf.diploma;
+
+import at.oevsv.sota.data.api.Candidate;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class LocaleContextTest {
+
+    @Test
+    void of_isCreatedOncePerLocale() {
+        assertThat(LocaleContext.of(Locale.ENGLISH)).isSameAs(LocaleContext.of(Locale.ENGLISH));
+        assertThat(LocaleContext.of(Locale.ENGLISH)).isNotSameAs(LocaleContext.of(Locale.GERMAN));
+    }
+
+    @Test
+    void formatNumeric_spellsOut() {
+        assertThat(LocaleContext.of(Locale.ENGLISH).formatNumeric(20)).isEqualTo("20 (twenty)");
+        assertThat(LocaleContext.of(Locale.GERMAN).formatNumeric(20)).isEqualTo("20 (zwanzig)");
+    }
+
+    @Test
+    void formatBody_splitsLines() {
+        final var body = LocaleContext.of(Locale.ENGLISH).formatBody(Candidate.Category.ACTIVATOR, "40 (forty)", "9 (nine)");
+
+        assertThat(body).containsExactly("for activating a minimum of 40 (forty) summits in 9 (nine)", "different Austrian regions.");
+    }
+
+    @Test
+    void formatDate_isLocalized() {
+        assertThat(LocaleContext.of(Locale.ENGLISH).formatDate(LocalDate.of(2024, 5, 1))).isEqualTo("May 1, 2024");
+        assertThat(LocaleContext.of(Locale.GERMAN).getString("diploma.id.label")).isNotBlank();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 David Schwingenschlögl
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.oevsv.sota.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Hmac} with initializing a {@link Mac} per call. Not run by the build; start it with
+ * <code>mvn test-compile exec:java -Dexec.mainClass=at.oevsv.sota.security.HmacBenchmark -Dexec.classpathScope=test</code>
+ * or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HmacBenchmark {
+
+    private static final String CANDIDATE = """
+            {"callSign":"OE5JFE","activator":true,"chaser":false,"s2s":false,"summits":["OE/OO-001","OE/OO-002",\
+            "OE/OO-003","OE/OO-004","OE/OO-005","OE/OO-006","OE/OO-007","OE/OO-008","OE/OO-009","OE/OO-010"]}""";
+
+    private byte[] data;
+    private SecretKeySpec key;
+    private Hmac.Payload payload;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException, InvalidKeyException {
+        data = CANDIDATE.getBytes(StandardCharsets.UTF_8);
+        key = new SecretKeySpec(new byte[32], "HmacSHA256");
+        payload = os -> os.write(data);
+        // Create the key set outside the measurement
+        Hmac.calculate(data);
+    }
+
+    @Benchmark
+    public byte[] freshMac() throws NoSuchAlgorithmException, InvalidKeyException {
+        final var mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        return mac.doFinal(data);
+    }
+
+    @Benchmark
+    public String calculate() throws NoSuchAlgorithmException, InvalidKeyException {
+        return Hmac.calculate(data);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String calculate_contended() throws NoSuchAlgorithmException, InvalidKeyException {
+        return Hmac.calculate(data);
+    }
+
+    @Benchmark
+    public String sign() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        return Hmac.sign(payload);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HmacBenchmark.class.getSimpleName()).build()).run();
+    }
+}
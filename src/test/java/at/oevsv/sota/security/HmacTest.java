@@ -18,10 +18,23 @@ package at.oevsv.sota.security;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 
 final class HmacTest {
 
@@ -29,4 +42,131 @@ final class HmacTest {
     void hashIsSameForMultipleCalls() throws NoSuchAlgorithmException, InvalidKeyException {
         assertThat(Hmac.calculate("test")).isEqualTo(Hmac.calculate("test"));
     }
+
+    @Test
+    void streamedPayload_yieldsSameHashAsString() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        final var data = "{\"callSign\":\"OE5IDT\",\"name\":\"Schwingenschlögl\"}";
+        final var bytes = data.getBytes(StandardCharsets.UTF_8);
+
+        assertThat(Hmac.calculate(os -> {
+            os.write(bytes[0]);
+            os.write(bytes, 1, bytes.length - 1);
+        })).isEqualTo(Hmac.calculate(data));
+    }
+
+    @Test
+    void bytesAndBuffers_yieldSameHashAsString() throws NoSuchAlgorithmException, InvalidKeyException {
+        final var expected = Hmac.calculate("test");
+
+        assertThat(expected).hasSize(64).matches("[0-9A-F]+");
+        assertThat(Hmac.calculate("test".getBytes(StandardCharsets.UTF_8))).isEqualTo(expected);
+        assertThat(Hmac.calculate(ByteBuffer.wrap("a test".getBytes(StandardCharsets.UTF_8), 2, 4))).isEqualTo(expected);
+        assertThat(Hmac.calculate(ByteBuffer.allocateDirect(4).put("test".getBytes(StandardCharsets.UTF_8)).flip())).isEqualTo(expected);
+    }
+
+    @Test
+    void failedPayload_doesNotAffectNextHash() throws NoSuchAlgorithmException, InvalidKeyException {
+        final var expected = Hmac.calculate("test");
+
+        assertThatIOException().isThrownBy(() -> Hmac.calculate(os -> {
+            os.write(42);
+            throw new IOException("failed");
+        }));
+
+        assertThat(Hmac.calculate("test")).isEqualTo(expected);
+    }
+
+    @Test
+    void concurrentCalculations_yieldSameHash() throws NoSuchAlgorithmException, InvalidKeyException {
+        final var expected = Hmac.calculate("test");
+
+        final var hashes = IntStream.range(0, 1_000).parallel().mapToObj(index -> {
+            try {
+                return Hmac.calculate("test");
+            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                throw new IllegalStateException(e);
+            }
+        }).collect(Collectors.toSet());
+
+        assertThat(hashes).containsExactly(expected);
+    }
+
+    @Test
+    void concurrentCalculations_onVirtualThreads_yieldSameHash() throws Exception {
+        final var expected = Hmac.calculate("test");
+
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var hashes = executor.invokeAll(Collections.nCopies(1_000, () -> Hmac.calculate("test")));
+
+            assertThat(hashes).extracting(Future::get).containsOnly(expected);
+        }
+    }
+
+    @Test
+    void nestedCalculation_yieldsSameHash() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        final var expected = Hmac.calculate("test");
+
+        final var outer = Hmac.calculate(os -> {
+            try {
+                assertThat(Hmac.calculate("test")).isEqualTo(expected);
+            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                throw new IllegalStateException(e);
+            }
+            os.write("test".getBytes(StandardCharsets.UTF_8));
+        });
+
+        assertThat(outer).isEqualTo(expected);
+    }
+
+    @Test
+    void signature_isVerified() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        final Hmac.Payload payload = os -> os.write("test".getBytes(StandardCharsets.UTF_8));
+        final var signature = Hmac.sign(payload);
+
+        assertThat(signature).isEqualTo(Hmac.GENERATED_KEY_ID + ":" + Hmac.calculate("test"));
+        assertThat(Hmac.verify(signature, payload)).isTrue();
+        assertThat(Hmac.verify(signature, os -> os.write("tampered".getBytes(StandardCharsets.UTF_8)))).isFalse();
+        assertThat(Hmac.verify("unknown:" + Hmac.calculate("test"), payload)).isFalse();
+        assertThat(Hmac.verify(Hmac.calculate("test"), payload)).isFalse();
+        assertThat(Hmac.verify(null, payload)).isFalse();
+    }
+
+    @Test
+    void keys_areLoadedOnce() {
+        assertThat(Hmac.keys()).isSameAs(Hmac.keys());
+    }
+
+    @Test
+    void keySet_withoutKeys_generatesOne() {
+        final var keys = Hmac.KeySet.of(List.of(), null);
+
+        assertThat(keys.active()).isEqualTo(Hmac.GENERATED_KEY_ID);
+        assertThat(keys.keys()).containsOnlyKeys(Hmac.GENERATED_KEY_ID);
+    }
+
+    @Test
+    void keySet_configured_firstIsActiveByDefault() {
+        final var keys = Hmac.KeySet.of(List.of("2024:" + key('a'), " 2025 : " + key('b') + " "), null);
+
+        assertThat(keys.active()).isEqualTo("2024");
+        assertThat(keys.keys()).containsOnlyKeys("2024", "2025");
+        assertThat(keys.keys().get("2025").getEncoded()).containsOnly((byte) 'b');
+        assertThat(Hmac.KeySet.of(List.of("2024:" + key('a'), "2025:" + key('b')), "2025").active()).isEqualTo("2025");
+    }
+
+    @Test
+    void keySet_invalid_isRejected() {
+        assertThatIllegalStateException().isThrownBy(() -> Hmac.KeySet.of(List.of(key('a')), null));
+        assertThatIllegalStateException().isThrownBy(() -> Hmac.KeySet.of(List.of("a key:" + key('a')), null));
+        assertThatIllegalStateException().isThrownBy(() -> Hmac.KeySet.of(List.of("short:" + Base64.getEncoder().encodeToString(new byte[16])), null));
+        assertThatIllegalStateException().isThrownBy(() -> Hmac.KeySet.of(List.of("broken:not base64!"), null));
+        assertThatIllegalStateException().isThrownBy(() -> Hmac.KeySet.of(List.of("twice:" + key('a'), "twice:" + key('b')), null));
+        assertThatIllegalStateException().isThrownBy(() -> Hmac.KeySet.of(List.of("2024:" + key('a')), "2025"));
+    }
+
+    private static String key(char fill) {
+        final var material = new byte[32];
+        Arrays.fill(material, (byte) fill);
+        return Base64.getEncoder().encodeToString(material);
+    }
 }